@@ -1,13 +1,21 @@
 package com.miaomc.ssaver.commands;
 
+import com.google.gson.JsonObject;
 import com.miaomc.ssaver.SSaver;
+import com.miaomc.ssaver.utils.CircuitBreaker;
+import com.miaomc.ssaver.utils.StatKeys;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Statistic;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
+import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -16,6 +24,18 @@ public class SsaverCommand implements CommandExecutor, TabCompleter {
 
     private final SSaver plugin;
 
+    // 补全统计项时最多返回的数量
+    private static final int STAT_COMPLETION_LIMIT = 100;
+
+    // 不指定统计项时展示的概要统计
+    private static final Statistic[] SUMMARY_STATISTICS = {
+            Statistic.PLAY_ONE_MINUTE,
+            Statistic.DEATHS,
+            Statistic.MOB_KILLS,
+            Statistic.PLAYER_KILLS,
+            Statistic.JUMP
+    };
+
     public SsaverCommand(SSaver plugin) {
         this.plugin = plugin;
         // 不在构造函数中设置执行器，移到外部处理
@@ -36,7 +56,7 @@ public class SsaverCommand implements CommandExecutor, TabCompleter {
         };
 
         command.setDescription("SSaver 命令");
-        command.setUsage("/ssaver <reload|help>");
+        command.setUsage("/ssaver <reload|status|lookup|flush|export|import|upgrade|help>");
 
         // 注册到命令映射中
         plugin.getServer().getCommandMap().register("miaomc.ssaver", command);
@@ -62,6 +82,8 @@ public class SsaverCommand implements CommandExecutor, TabCompleter {
                 // 关闭并重新初始化MySQL连接池
                 plugin.getMySQL().close();
                 plugin.getMySQL().reInitialize();
+                plugin.setupRedisCache();
+                plugin.setupHttpServer();
 
                 if (!plugin.getMySQL().testConnection()) {
                     sender.sendMessage("§c重新加载配置后连接数据库失败，请检查配置！");
@@ -70,6 +92,67 @@ public class SsaverCommand implements CommandExecutor, TabCompleter {
 
                 sender.sendMessage("§a配置已重新加载！");
                 return true;
+            case "status":
+                if (!sender.hasPermission("miaomc.ssaver.admin")) {
+                    sender.sendMessage("§c你没有权限执行此命令！");
+                    return true;
+                }
+                sendStatus(sender);
+                return true;
+            case "lookup":
+                if (!sender.hasPermission("miaomc.ssaver.admin")) {
+                    sender.sendMessage("§c你没有权限执行此命令！");
+                    return true;
+                }
+                if (args.length < 2) {
+                    sender.sendMessage("§c用法：/ssaver lookup <玩家> [统计项]");
+                    return true;
+                }
+                handleLookup(sender, args[1], args.length > 2 ? args[2] : null);
+                return true;
+            case "flush":
+                if (!sender.hasPermission("miaomc.ssaver.admin")) {
+                    sender.sendMessage("§c你没有权限执行此命令！");
+                    return true;
+                }
+                handleFlush(sender, args.length > 1 ? args[1] : "all");
+                return true;
+            case "export":
+                if (!sender.hasPermission("miaomc.ssaver.admin")) {
+                    sender.sendMessage("§c你没有权限执行此命令！");
+                    return true;
+                }
+                String format = args.length > 1 ? args[1].toLowerCase() : "json";
+                if (!format.equals("json") && !format.equals("csv")) {
+                    sender.sendMessage("§c用法：/ssaver export [json|csv]");
+                    return true;
+                }
+                if (!plugin.getDataTransfer().exportData(sender, format)) {
+                    sender.sendMessage("§c已有导出/导入任务正在执行，请稍后再试！");
+                }
+                return true;
+            case "import":
+                if (!sender.hasPermission("miaomc.ssaver.admin")) {
+                    sender.sendMessage("§c你没有权限执行此命令！");
+                    return true;
+                }
+                if (args.length < 2) {
+                    sender.sendMessage("§c用法：/ssaver import <文件名> [服务器名称]");
+                    return true;
+                }
+                if (!plugin.getDataTransfer().importData(sender, args[1], args.length > 2 ? args[2] : null)) {
+                    sender.sendMessage("§c已有导出/导入任务正在执行，请稍后再试！");
+                }
+                return true;
+            case "upgrade":
+                if (!sender.hasPermission("miaomc.ssaver.admin")) {
+                    sender.sendMessage("§c你没有权限执行此命令！");
+                    return true;
+                }
+                if (!plugin.getDataTransfer().upgradeData(sender)) {
+                    sender.sendMessage("§c已有导出/导入任务正在执行，请稍后再试！");
+                }
+                return true;
             case "help":
                 sendHelp(sender);
                 return true;
@@ -79,9 +162,145 @@ public class SsaverCommand implements CommandExecutor, TabCompleter {
         }
     }
 
+    private void sendStatus(CommandSender sender) {
+        CircuitBreaker breaker = plugin.getMySQL().getCircuitBreaker();
+        String state = switch (breaker.getState()) {
+            case CLOSED -> "§a正常";
+            case OPEN -> "§c熔断";
+            case HALF_OPEN -> "§e探测恢复中";
+        };
+
+        sender.sendMessage("§6SSaver 数据库状态：");
+        sender.sendMessage("§e熔断器 §7: " + state);
+        sender.sendMessage("§e并发 §7: §f" + breaker.getInFlight() + " / " + breaker.getLimit() + " §7(排队 " + breaker.getQueued() + ")");
+        sender.sendMessage("§e已拒绝请求 §7: §f" + breaker.getRejected());
+        sender.sendMessage("§e本地暂存 §7: §f" + plugin.getPendingSaves().size() + " 条");
+        sender.sendMessage("§eRedis 缓存 §7: " + (plugin.getRedisCache() != null ? "§a已启用" : "§7未启用"));
+    }
+
+    /**
+     * 查询玩家统计，在线玩家直接读取内存中的实时数据，离线玩家异步读取缓存
+     *
+     * @param sender     命令发送者
+     * @param playerName 玩家名称
+     * @param statName   统计项，为null时显示概要
+     */
+    private void handleLookup(CommandSender sender, String playerName, String statName) {
+        StatKeys.StatKey statKey = null;
+        if (statName != null) {
+            statKey = StatKeys.get(statName);
+            if (statKey == null) {
+                sender.sendMessage("§c未知的统计项：" + statName);
+                return;
+            }
+        }
+
+        Player online = Bukkit.getPlayerExact(playerName);
+        if (online != null) {
+            if (statKey == null) {
+                sender.sendMessage("§6玩家 " + online.getName() + " 的实时统计：");
+                for (Statistic stat : SUMMARY_STATISTICS) {
+                    sender.sendMessage("§e" + stat.name() + " §7: §f" + online.getStatistic(stat));
+                }
+                return;
+            }
+
+            Integer value = statKey.read(online);
+            if (value != null) {
+                sender.sendMessage("§e" + online.getName() + " §7的 §e" + statName.toUpperCase() + " §7: §f" + value);
+                return;
+            }
+            // 派生统计只在保存时计算，继续读取已保存的值
+        }
+
+        // 不向 Mojang 查询，只使用服务器已知的玩家
+        OfflinePlayer offline = online != null ? online : Bukkit.getOfflinePlayerIfCached(playerName);
+        if (offline == null) {
+            sender.sendMessage("§c未找到玩家：" + playerName);
+            return;
+        }
+
+        String name = offline.getName() != null ? offline.getName() : playerName;
+        StatKeys.StatKey key = statKey;
+        plugin.getPlayerDataCache().get(offline.getUniqueId().toString()).whenComplete((data, ex) -> {
+            if (ex != null || data == null) {
+                sender.sendMessage("§c没有找到玩家 " + name + " 的已保存数据");
+                return;
+            }
+
+            if (key == null) {
+                sendSavedSummary(sender, name, data);
+                return;
+            }
+
+            String upperName = statName.toUpperCase();
+            JsonObject section = data.has(key.section()) ? data.getAsJsonObject(key.section()) : new JsonObject();
+            long value = section.has(upperName) ? section.get(upperName).getAsLong() : 0;
+            sender.sendMessage("§e" + name + " §7的 §e" + upperName + " §7（已保存）: §f" + value);
+        });
+    }
+
+    private void sendSavedSummary(CommandSender sender, String name, JsonObject data) {
+        sender.sendMessage("§6玩家 " + name + " 的已保存统计：");
+
+        JsonObject meta = data.has("meta") ? data.getAsJsonObject("meta") : new JsonObject();
+        for (String field : new String[]{"onlineTimeInSeconds", "afkTimeInSeconds"}) {
+            if (meta.has(field)) {
+                sender.sendMessage("§e" + field + " §7: §f" + meta.get(field).getAsLong());
+            }
+        }
+
+        JsonObject general = data.has("general") ? data.getAsJsonObject("general") : new JsonObject();
+        for (Statistic stat : SUMMARY_STATISTICS) {
+            if (general.has(stat.name())) {
+                sender.sendMessage("§e" + stat.name() + " §7: §f" + general.get(stat.name()).getAsLong());
+            }
+        }
+    }
+
+    /**
+     * 立即批量保存在线玩家的数据
+     *
+     * @param sender 命令发送者
+     * @param target 玩家名称或 all
+     */
+    private void handleFlush(CommandSender sender, String target) {
+        Collection<? extends Player> players;
+        if (target.equalsIgnoreCase("all")) {
+            players = new ArrayList<>(Bukkit.getOnlinePlayers());
+        } else {
+            Player player = Bukkit.getPlayerExact(target);
+            if (player == null) {
+                sender.sendMessage("§c玩家 " + target + " 不在线！");
+                return;
+            }
+            players = List.of(player);
+        }
+
+        if (players.isEmpty()) {
+            sender.sendMessage("§c当前没有在线玩家！");
+            return;
+        }
+
+        sender.sendMessage("§7正在保存 " + players.size() + " 名玩家的数据...");
+        plugin.getSavePlayerData().flushPlayers(players)
+                .thenAccept(result -> {
+                    sender.sendMessage("§a已保存 " + result.saved() + " 名玩家的数据");
+                    if (result.spooled() > 0) {
+                        sender.sendMessage("§e" + result.spooled() + " 名玩家的数据因数据库不可用已暂存到本地，恢复后自动写入");
+                    }
+                });
+    }
+
     private void sendHelp(CommandSender sender) {
         sender.sendMessage("§6SSaver 命令帮助：");
         sender.sendMessage("§e/ssaver reload §7- 重新加载配置");
+        sender.sendMessage("§e/ssaver status §7- 查看数据库熔断器与本地暂存状态");
+        sender.sendMessage("§e/ssaver lookup <玩家> [统计项] §7- 查询玩家统计");
+        sender.sendMessage("§e/ssaver flush [玩家|all] §7- 立即保存在线玩家的数据");
+        sender.sendMessage("§e/ssaver export [json|csv] §7- 导出全部数据到 exports 目录");
+        sender.sendMessage("§e/ssaver import <文件名> [服务器名称] §7- 从 exports 目录导入数据");
+        sender.sendMessage("§e/ssaver upgrade §7- 在后台将旧结构版本的数据升级到当前版本");
         sender.sendMessage("§e/ssaver help §7- 显示此帮助");
     }
 
@@ -92,6 +311,12 @@ public class SsaverCommand implements CommandExecutor, TabCompleter {
         if (args.length == 1) {
             if (sender.hasPermission("miaomc.ssaver.admin")) {
                 completions.add("reload");
+                completions.add("status");
+                completions.add("lookup");
+                completions.add("flush");
+                completions.add("export");
+                completions.add("import");
+                completions.add("upgrade");
             }
             completions.add("help");
 
@@ -100,6 +325,32 @@ public class SsaverCommand implements CommandExecutor, TabCompleter {
                     .collect(Collectors.toList());
         }
 
+        if (args.length == 2 && sender.hasPermission("miaomc.ssaver.admin")) {
+            if (args[0].equalsIgnoreCase("lookup") || args[0].equalsIgnoreCase("flush")) {
+                if (args[0].equalsIgnoreCase("flush")) {
+                    completions.add("all");
+                }
+                Bukkit.getOnlinePlayers().forEach(player -> completions.add(player.getName()));
+            } else if (args[0].equalsIgnoreCase("export")) {
+                completions.add("json");
+                completions.add("csv");
+            } else if (args[0].equalsIgnoreCase("import")) {
+                String[] files = plugin.getDataTransfer().getExportFolder().list();
+                if (files != null) {
+                    completions.addAll(List.of(files));
+                }
+            }
+
+            return completions.stream()
+                    .filter(s -> s.toLowerCase().startsWith(args[1].toLowerCase()))
+                    .collect(Collectors.toList());
+        }
+
+        if (args.length == 3 && args[0].equalsIgnoreCase("lookup") && sender.hasPermission("miaomc.ssaver.admin")) {
+            // 统计项数量很多，使用预先构建的前缀树补全
+            return StatKeys.complete(args[2], STAT_COMPLETION_LIMIT);
+        }
+
         return completions;
     }
 }
\ No newline at end of file
@@ -0,0 +1,273 @@
+package com.miaomc.ssaver.listener;
+
+import com.google.gson.JsonObject;
+import com.miaomc.ssaver.SSaver;
+import com.miaomc.ssaver.utils.StatKeys;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Statistic;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerStatisticIncrementEvent;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实时统计计数器
+ * 开启 settings.liveStatistics 后，监听统计增加事件，把方块、物品、实体统计的最新值记录到按序号索引的数组中，并标记变化。
+ * 保存时只需写出变化过的统计，退出时不再需要逐个材质调用 getStatistic。
+ * 无类型统计（如移动距离）不一定触发事件，仍在保存时直接读取，数量很少。
+ * 计数器只在主线程读写。
+ */
+public class LiveStatistics implements Listener {
+
+    private static final Statistic[] MATERIAL_STATISTICS = {
+            Statistic.MINE_BLOCK,
+            Statistic.USE_ITEM,
+            Statistic.BREAK_ITEM,
+            Statistic.CRAFT_ITEM
+    };
+
+    private static final int MATERIAL_COUNT = Material.values().length;
+    private static final int ENTITY_COUNT = EntityType.values().length;
+
+    // 每种统计在计数数组中的起始序号，不追踪的统计为 -1
+    private static final int[] BASE_ORDINAL = new int[Statistic.values().length];
+    private static final int COUNTER_SIZE;
+
+    // 每个序号对应各分区中的键名，不属于该分区时为 null
+    private static final String[] BLOCK_KEYS;
+    private static final String[] ITEM_KEYS;
+    private static final String[] ENTITY_KEYS;
+
+    static {
+        Arrays.fill(BASE_ORDINAL, -1);
+        int size = 0;
+        for (Statistic stat : MATERIAL_STATISTICS) {
+            BASE_ORDINAL[stat.ordinal()] = size;
+            size += MATERIAL_COUNT;
+        }
+        for (Statistic stat : StatKeys.ENTITY_STATISTICS) {
+            BASE_ORDINAL[stat.ordinal()] = size;
+            size += ENTITY_COUNT;
+        }
+        COUNTER_SIZE = size;
+
+        BLOCK_KEYS = new String[COUNTER_SIZE];
+        ITEM_KEYS = new String[COUNTER_SIZE];
+        ENTITY_KEYS = new String[COUNTER_SIZE];
+        for (Statistic stat : StatKeys.BLOCK_STATISTICS) {
+            for (Material material : StatKeys.VALID_BLOCK_MATERIALS) {
+                BLOCK_KEYS[BASE_ORDINAL[stat.ordinal()] + material.ordinal()] = StatKeys.blockKey(stat, material);
+            }
+        }
+        for (Statistic stat : StatKeys.ITEM_STATISTICS) {
+            for (Material material : StatKeys.VALID_ITEM_MATERIALS) {
+                ITEM_KEYS[BASE_ORDINAL[stat.ordinal()] + material.ordinal()] = StatKeys.itemKey(stat, material);
+            }
+        }
+        for (Statistic stat : StatKeys.ENTITY_STATISTICS) {
+            for (EntityType entityType : EntityType.values()) {
+                ENTITY_KEYS[BASE_ORDINAL[stat.ordinal()] + entityType.ordinal()] = StatKeys.entityKey(stat, entityType);
+            }
+        }
+    }
+
+    private final SSaver plugin;
+
+    private final ConcurrentHashMap<UUID, Counters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * 单个玩家的计数器
+     */
+    private static final class Counters {
+        final int[] values = new int[COUNTER_SIZE];
+        final BitSet dirty = new BitSet(COUNTER_SIZE);
+        // 上次生成 HTTP 快照后变化的统计，与保存的变化标记互不影响
+        final BitSet snapshotDirty = new BitSet(COUNTER_SIZE);
+        // 本次会话的完整统计是否已写入数据库，只有这样才能只写出变化的部分
+        volatile boolean baseline;
+    }
+
+    public LiveStatistics(SSaver plugin) {
+        this.plugin = plugin;
+    }
+
+    private boolean isEnabled() {
+        return plugin.getConfig().getBoolean("settings.liveStatistics", false);
+    }
+
+    /**
+     * 为已在线的玩家（如重载插件时）创建计数器
+     */
+    public void start() {
+        Bukkit.getOnlinePlayers().forEach(this::track);
+    }
+
+    private void track(Player player) {
+        if (!isEnabled()) {
+            return;
+        }
+        // 数据库中已有的统计可能来自其他服务器或旧版本，与本次会话的计数不一致，
+        // 每次会话都先完整保存一次，写入成功后才由 confirmBaseline 改为只写出变化
+        counters.put(player.getUniqueId(), new Counters());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        track(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onStatisticIncrement(PlayerStatisticIncrementEvent event) {
+        int base = BASE_ORDINAL[event.getStatistic().ordinal()];
+        if (base < 0) {
+            return;
+        }
+        Counters playerCounters = counters.get(event.getPlayer().getUniqueId());
+        if (playerCounters == null) {
+            return;
+        }
+
+        int offset;
+        if (event.getMaterial() != null) {
+            offset = event.getMaterial().ordinal();
+        } else if (event.getEntityType() != null) {
+            offset = event.getEntityType().ordinal();
+        } else {
+            return;
+        }
+
+        int ordinal = base + offset;
+        playerCounters.values[ordinal] = event.getNewValue();
+        playerCounters.dirty.set(ordinal);
+        playerCounters.snapshotDirty.set(ordinal);
+    }
+
+    /**
+     * 玩家是否可以只保存变化的统计
+     *
+     * @param uuid 玩家UUID
+     * @return 是否可以增量保存
+     */
+    public boolean hasBaseline(UUID uuid) {
+        Counters playerCounters = counters.get(uuid);
+        return playerCounters != null && playerCounters.baseline;
+    }
+
+    /**
+     * 取出上次保存后变化过的方块、物品、实体统计，并清除变化标记，须在主线程调用
+     * 变化随增量数据一起保存，写入失败时增量数据暂存到本地，不会因清除标记而丢失
+     *
+     * @param uuid 玩家UUID
+     * @return 包含 blocks/entities/items 分区的变化，无法增量保存时返回null
+     */
+    public JsonObject collectChanges(UUID uuid) {
+        Counters playerCounters = counters.get(uuid);
+        if (playerCounters == null || !playerCounters.baseline) {
+            return null;
+        }
+
+        JsonObject changes = changes(playerCounters, playerCounters.dirty);
+        playerCounters.dirty.clear();
+        return changes;
+    }
+
+    /**
+     * 取出上次生成快照后变化过的方块、物品、实体统计，并清除快照的变化标记，须在主线程调用
+     * 与保存使用各自的标记，不影响保存时写出的变化
+     *
+     * @param uuid 玩家UUID
+     * @return 包含 blocks/entities/items 分区的变化，玩家没有计数器时返回null
+     */
+    public JsonObject collectSnapshotChanges(UUID uuid) {
+        Counters playerCounters = counters.get(uuid);
+        if (playerCounters == null) {
+            return null;
+        }
+        JsonObject changes = changes(playerCounters, playerCounters.snapshotDirty);
+        playerCounters.snapshotDirty.clear();
+        return changes;
+    }
+
+    /**
+     * 完整读取快照时调用，之后的快照变化从这次读取开始记录，须在主线程调用
+     *
+     * @param uuid 玩家UUID
+     * @return 玩家是否有计数器，没有时之后仍需完整读取
+     */
+    public boolean resetSnapshotChanges(UUID uuid) {
+        Counters playerCounters = counters.get(uuid);
+        if (playerCounters == null) {
+            return false;
+        }
+        playerCounters.snapshotDirty.clear();
+        return true;
+    }
+
+    private static JsonObject changes(Counters playerCounters, BitSet dirty) {
+        JsonObject blocks = new JsonObject();
+        JsonObject entities = new JsonObject();
+        JsonObject items = new JsonObject();
+
+        for (int ordinal = dirty.nextSetBit(0); ordinal >= 0; ordinal = dirty.nextSetBit(ordinal + 1)) {
+            int value = playerCounters.values[ordinal];
+            if (BLOCK_KEYS[ordinal] != null) {
+                blocks.addProperty(BLOCK_KEYS[ordinal], value);
+            }
+            if (ITEM_KEYS[ordinal] != null) {
+                items.addProperty(ITEM_KEYS[ordinal], value);
+            }
+            if (ENTITY_KEYS[ordinal] != null) {
+                entities.addProperty(ENTITY_KEYS[ordinal], value);
+            }
+        }
+
+        JsonObject changes = new JsonObject();
+        changes.add("blocks", blocks);
+        changes.add("entities", entities);
+        changes.add("items", items);
+        return changes;
+    }
+
+    /**
+     * 完整读取统计时调用，之后的变化从这次读取开始记录，须在主线程调用
+     * 完整数据写入数据库前仍按完整模式保存，见 {@link #confirmBaseline(UUID)}
+     *
+     * @param uuid 玩家UUID
+     */
+    public void resetChanges(UUID uuid) {
+        Counters playerCounters = counters.get(uuid);
+        if (playerCounters != null) {
+            playerCounters.dirty.clear();
+        }
+    }
+
+    /**
+     * 完整统计已写入数据库后调用，之后的保存可以只写出变化
+     *
+     * @param uuid 玩家UUID
+     */
+    public void confirmBaseline(UUID uuid) {
+        Counters playerCounters = counters.get(uuid);
+        if (playerCounters != null) {
+            playerCounters.baseline = true;
+        }
+    }
+
+    /**
+     * 玩家退出保存后释放计数器
+     *
+     * @param uuid 玩家UUID
+     */
+    public void release(UUID uuid) {
+        counters.remove(uuid);
+    }
+}
@@ -1,7 +1,11 @@
 package com.miaomc.ssaver.listener;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.miaomc.ssaver.SSaver;
+import com.miaomc.ssaver.utils.SchemaRegistry;
+import com.miaomc.ssaver.utils.StatKeys;
+import com.miaomc.ssaver.utils.StoredRow;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.Statistic;
@@ -10,56 +14,70 @@ import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
-import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitRunnable;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 public class SavePlayerData implements Listener {
 
     private final SSaver plugin;
+    // 运行期间不会变化，只解析一次
+    private final String mcVersion;
+    // 已合并、等待批量写入的数据，同一玩家之后的写入会接管尚未开始写入的部分
+    private final ConcurrentHashMap<UUID, FlushEntry> flushing = new ConcurrentHashMap<>();
 
-    private final Map<UUID, Long> playerJoinTimes = new ConcurrentHashMap<>();
-
-    // 缓存常用地统计类型，提高性能
-    private static final Statistic[] UNTYPED_STATISTICS;
-    private static final Statistic[] BLOCK_STATISTICS = {
-            Statistic.MINE_BLOCK,
-            Statistic.USE_ITEM
-    };
-    private static final Statistic[] ITEM_STATISTICS = {
-            Statistic.USE_ITEM,
-            Statistic.BREAK_ITEM,
-            Statistic.CRAFT_ITEM
-    };
-    private static final Statistic[] ENTITY_STATISTICS = {
-            Statistic.KILL_ENTITY,
-            Statistic.ENTITY_KILLED_BY
-    };
-
-    static {
-        // 预先筛选所有无类型的统计
-        UNTYPED_STATISTICS = getUntypedStatistics();
+    public SavePlayerData(SSaver plugin) {
+        this.plugin = plugin;
+        this.mcVersion = parseMcVersion();
+        plugin.getLogger().info("玩家数据保存监听器已注册");
     }
 
-    private static Statistic[] getUntypedStatistics() {
-        return java.util.Arrays.stream(Statistic.values())
-                .filter(stat -> stat.getType() == Statistic.Type.UNTYPED)
-                .toArray(Statistic[]::new);
+    /**
+     * 获取写入 dataVersion 列的 Minecraft 版本，所有写入路径使用同一个值
+     *
+     * @return Minecraft 版本，如 1.21.4
+     */
+    public String getDataVersion() {
+        return mcVersion;
     }
 
-    @EventHandler(priority = EventPriority.MONITOR)
-    public void onPlayerJoin(PlayerJoinEvent event) {
-        Player player = event.getPlayer();
-        playerJoinTimes.put(player.getUniqueId(), System.currentTimeMillis());
+    /**
+     * 一名玩家在批量写入中的数据
+     * 批量写入开始前被接管（withdrawn）的数据由接管方一并保存，开始后（claimed）接管方等待写入完成
+     */
+    private static final class FlushEntry {
+        final UUID uuid;
+        final List<JsonObject> updates;
+        final StoredRow row;
+        final CompletableFuture<Void> written = new CompletableFuture<>();
+        boolean claimed;
+        boolean withdrawn;
+
+        FlushEntry(UUID uuid, List<JsonObject> updates, StoredRow row) {
+            this.uuid = uuid;
+            this.updates = updates;
+            this.row = row;
+        }
     }
 
-    public SavePlayerData(SSaver plugin) {
-        this.plugin = plugin;
-        plugin.getLogger().info("玩家数据保存监听器已注册");
+    /**
+     * 批量保存的结果
+     *
+     * @param saved   已写入数据库的玩家数量
+     * @param spooled 数据库不可用、已暂存到本地等待回放的玩家数量
+     */
+    public record FlushResult(int saved, int spooled) {
     }
 
     @EventHandler(priority = EventPriority.MONITOR)
@@ -72,73 +90,495 @@ public class SavePlayerData implements Listener {
 
     /**
      * 保存玩家的统计数据
+     * 统计数据在调用线程（主线程）收集，读取与写入追加到该玩家的写入链，在异步线程完成
      *
      * @param player 玩家
+     * @return 保存完成的Future
      */
-    public void savePlayerStatistics(Player player) {
+    public CompletableFuture<?> savePlayerStatistics(Player player) {
         UUID uuid = player.getUniqueId();
         String playerName = player.getName();
+        SessionTracker tracker = plugin.getSessionTracker();
 
-        // 获取玩家加入时的时间戳
-        Long joinTime = playerJoinTimes.remove(uuid);
-        if (joinTime == null) {
-            plugin.getLogger().warning("无法获取玩家 " + player.getName() + " 的加入时间，跳过统计");
-            return;
+        long sessionTimeInSeconds = tracker.getSessionSeconds(uuid);
+        if (sessionTimeInSeconds < 0) {
+            plugin.getLogger().warning("无法获取玩家 " + player.getName() + " 的在线会话，跳过统计");
+            plugin.getLiveStatistics().release(uuid);
+            return CompletableFuture.completedFuture(null);
         }
 
-        // 计算在线时间（秒）
-        long sessionTimeInSeconds = Math.max(0, (System.currentTimeMillis() - joinTime) / 1000);
-
+        // 检查是否达到最小在线时间，未达到时只更新 meta
+        // 实时统计模式下只写出变化的统计，开销很小，不受最小停留时间限制
+        JsonObject statistics = null;
         try {
-            // 从数据库获取现有数据
-            JsonObject existingData = plugin.getMySQL().getPlayerData(uuid.toString()).join();
-            if (existingData == null) {
-                existingData = new JsonObject();
+            long MINIMUM_SESSION_TIME = plugin.getConfig().getLong("settings.minSessionTime", 60);
+            if (sessionTimeInSeconds >= MINIMUM_SESSION_TIME || plugin.getLiveStatistics().hasBaseline(uuid)) {
+                statistics = collectStatistics(player);
             }
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.SEVERE, "收集玩家 " + playerName + " 的统计数据时发生错误", e);
+        } finally {
+            plugin.getLiveStatistics().release(uuid);
+        }
 
-            // 获取或创建 meta 对象
-            JsonObject meta;
-            if (existingData.has("meta")) {
-                meta = existingData.getAsJsonObject("meta");
-            } else {
-                meta = new JsonObject();
+        // 结束在线会话，进行中的检查点写入完成后才计算剩余时间，已写入的时间不会重复计算
+        long firstPlayed = player.getFirstPlayed();
+        JsonObject collected = statistics;
+        CompletableFuture<?> saved = tracker.endSession(uuid, session -> takeOverFlush(uuid).thenCompose(previous -> {
+            List<JsonObject> updates = new ArrayList<>(previous);
+            updates.add(createUpdate(uuid, playerName, firstPlayed, session.activeSeconds(), session.afkSeconds(), collected));
+            return saveUpdates(updates);
+        }));
+        return saved == null ? CompletableFuture.completedFuture(null) : saved;
+    }
+
+    /**
+     * 读取已有数据并按顺序合并保存，数据库不可用时暂存到本地，恢复后回放
+     *
+     * @param updates 同一玩家的增量数据，按产生顺序排列
+     * @return 是否已写入数据库
+     */
+    private CompletableFuture<Boolean> saveUpdates(List<JsonObject> updates) {
+        JsonObject last = updates.get(updates.size() - 1);
+        String uuid = last.get("uuid").getAsString();
+        return plugin.getMySQL().loadPlayerData(uuid)
+                .thenCompose(existingData -> plugin.getMySQL().saveData(uuid,
+                        mergeAll(existingData, updates), last.get("dataVersion").getAsString()))
+                .exceptionally(ex -> false)
+                .thenApply(success -> {
+                    if (success) {
+                        plugin.getPlayerDataCache().invalidate(uuid);
+                    } else {
+                        updates.forEach(plugin.getPendingSaves()::add);
+                    }
+                    return success;
+                });
+    }
+
+    private static boolean hasFullStatistics(JsonObject update) {
+        return update.has("statistics") && !update.getAsJsonObject("statistics").has("partial");
+    }
+
+    private static JsonObject mergeAll(JsonObject existingData, List<JsonObject> updates) {
+        JsonObject data = existingData;
+        for (JsonObject update : updates) {
+            data = mergePlayerData(data, update);
+        }
+        return data;
+    }
+
+    /**
+     * 接管该玩家尚未开始批量写入的数据，由调用方与自己的数据一并保存；批量写入已开始时等待其完成
+     * 只在该玩家的写入链中调用
+     *
+     * @param uuid 玩家UUID
+     * @return 接管的增量数据，没有时为空列表
+     */
+    private CompletableFuture<List<JsonObject>> takeOverFlush(UUID uuid) {
+        FlushEntry entry = flushing.get(uuid);
+        if (entry == null) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        synchronized (entry) {
+            if (!entry.claimed) {
+                entry.withdrawn = true;
+                flushing.remove(uuid, entry);
+                entry.written.complete(null);
+                return CompletableFuture.completedFuture(entry.updates);
             }
+        }
+        return entry.written.thenApply(ignored -> List.of());
+    }
+
+    /**
+     * 回放本地暂存的数据，在异步线程中同步执行
+     * 排在该玩家的写入链上，不与其检查点、批量保存或退出保存的读取与写回交错
+     *
+     * @param update 暂存的待保存数据
+     * @return 是否已写入数据库
+     */
+    public boolean replayPending(JsonObject update) {
+        String uuid = update.get("uuid").getAsString();
+        CompletableFuture<Boolean> replayed = plugin.getSessionTracker().runExclusive(UUID.fromString(uuid), () ->
+                plugin.getMySQL().loadPlayerData(uuid)
+                        .thenCompose(existingData -> plugin.getMySQL().saveData(uuid,
+                                mergePlayerData(existingData, update), update.get("dataVersion").getAsString()))
+                        .thenApply(success -> {
+                            if (success) {
+                                plugin.getPlayerDataCache().invalidate(uuid);
+                            }
+                            return success;
+                        }));
+        return replayed.exceptionally(ex -> false).join();
+    }
 
-            // 累加在线时间
-            long totalOnlineTime = 0;
-            if (meta.has("onlineTimeInSeconds")) {
-                totalOnlineTime = meta.get("onlineTimeInSeconds").getAsLong();
+    /**
+     * 立即保存在线玩家的数据，不结束在线会话
+     * 统计数据在主线程分批收集，每 tick 最多 settings.flushPlayersPerTick 名玩家，读取与写入在异步线程进行，
+     * 全部玩家收集完后合并为一次批量写入。
+     * 每名玩家的行构建完成后即放行其写入链，退出保存会接管尚未写入的行；
+     * 批量写入完成前只暂停该玩家的检查点，避免其增量被本次写入覆盖
+     *
+     * @param players 要保存的玩家，须在主线程调用
+     * @return 保存结果
+     */
+    public CompletableFuture<FlushResult> flushPlayers(Collection<? extends Player> players) {
+        ArrayDeque<UUID> queue = new ArrayDeque<>(players.size());
+        players.forEach(player -> queue.add(player.getUniqueId()));
+        int playersPerTick = Math.max(1, plugin.getConfig().getInt("settings.flushPlayersPerTick", 20));
+
+        List<CompletableFuture<FlushEntry>> entries = new ArrayList<>(players.size());
+        AtomicInteger readFailures = new AtomicInteger();
+        CompletableFuture<FlushResult> result = new CompletableFuture<>();
+
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < playersPerTick && !queue.isEmpty(); i++) {
+                    // 等待期间退出的玩家由退出时的保存处理
+                    Player player = Bukkit.getPlayer(queue.poll());
+                    if (player != null) {
+                        entries.add(queueFlush(player, readFailures));
+                    }
+                }
+                if (queue.isEmpty()) {
+                    cancel();
+                    writeFlush(entries, readFailures).whenComplete((flushResult, ex) -> {
+                        if (ex != null) {
+                            result.completeExceptionally(ex);
+                        } else {
+                            result.complete(flushResult);
+                        }
+                    });
+                }
             }
-            totalOnlineTime += sessionTimeInSeconds;
+        }.runTaskTimer(plugin, 0L, 1L);
+        return result;
+    }
 
-            meta.addProperty("onlineTimeInSeconds", totalOnlineTime);
-            meta.addProperty("firstJoinDate", player.getFirstPlayed());
-            meta.addProperty("playerName", playerName);
-            existingData.add("meta", meta);
+    /**
+     * 收集一名玩家的统计并追加到其写入链，读取已有数据后构建批量写入的行，须在主线程调用
+     *
+     * @param player       玩家
+     * @param readFailures 读取失败、已暂存到本地的玩家计数
+     * @return 构建好的行，读取失败或玩家已退出时为null
+     */
+    private CompletableFuture<FlushEntry> queueFlush(Player player, AtomicInteger readFailures) {
+        SessionTracker tracker = plugin.getSessionTracker();
+        String serverName = plugin.getMySQL().getServerName();
+        UUID uuid = player.getUniqueId();
+        String playerName = player.getName();
+        long firstPlayed = player.getFirstPlayed();
+        JsonObject statistics = collectStatistics(player);
+
+        CompletableFuture<FlushEntry> built = new CompletableFuture<>();
+        CompletableFuture<?> queued = tracker.enqueue(uuid, () -> takeOverFlush(uuid).thenCompose(previous -> {
+            long[] drained = tracker.drain(uuid);
+            List<JsonObject> updates = new ArrayList<>(previous);
+            updates.add(createUpdate(uuid, playerName, firstPlayed, drained[0], drained[1], statistics));
+
+            return plugin.getMySQL().loadPlayerData(uuid.toString()).handle((existingData, ex) -> {
+                try {
+                    if (ex != null) {
+                        throw new CompletionException(ex);
+                    }
+                    StoredRow row = new StoredRow(uuid.toString(), serverName,
+                            mergeAll(existingData, updates).toString(), mcVersion);
+                    FlushEntry entry = new FlushEntry(uuid, updates, row);
+                    tracker.holdCheckpoints(uuid, entry.written);
+                    flushing.put(uuid, entry);
+                    built.complete(entry);
+                } catch (RuntimeException e) {
+                    // 读取失败时整份增量暂存到本地，在线时间与统计变化在数据库恢复后回放
+                    updates.forEach(plugin.getPendingSaves()::add);
+                    readFailures.incrementAndGet();
+                    built.complete(null);
+                }
+                return null;
+            });
+        }));
+        if (queued == null) {
+            // 玩家已退出，数据由退出时的保存处理
+            built.complete(null);
+        }
+        return built;
+    }
 
-            // 检查是否达到最小在线时间
-            long MINIMUM_SESSION_TIME = plugin.getConfig().getLong("settings.minSessionTime", 60);
-            if (sessionTimeInSeconds >= MINIMUM_SESSION_TIME) {
-                // 更新统计数据
-                existingData.add("general", collectGeneralStatistics(player, playerName));
-                existingData.add("blocks", collectBlockStatistics(player));
-                existingData.add("entities", collectEntityStatistics(player));
-                existingData.add("items", collectItemStatistics(player));
+    /**
+     * 等待所有玩家的行构建完成后一次写入，写入失败时整份增量暂存到本地
+     *
+     * @param entries      各玩家构建的行
+     * @param readFailures 读取失败、已暂存到本地的玩家计数
+     * @return 保存结果
+     */
+    private CompletableFuture<FlushResult> writeFlush(List<CompletableFuture<FlushEntry>> entries, AtomicInteger readFailures) {
+        return CompletableFuture.allOf(entries.toArray(new CompletableFuture[0]))
+                .thenApplyAsync(ignored -> {
+                    List<FlushEntry> claimed = new ArrayList<>();
+                    for (CompletableFuture<FlushEntry> future : entries) {
+                        FlushEntry entry = future.join();
+                        if (entry == null) {
+                            continue;
+                        }
+                        synchronized (entry) {
+                            if (!entry.withdrawn) {
+                                entry.claimed = true;
+                                claimed.add(entry);
+                            }
+                        }
+                    }
+
+                    boolean success = false;
+                    try {
+                        plugin.getMySQL().upsertBatch(claimed.stream().map(entry -> entry.row).toList());
+                        success = true;
+                    } catch (Exception e) {
+                        plugin.getLogger().log(Level.SEVERE, "批量保存玩家数据失败，已暂存到本地", e);
+                    } finally {
+                        for (FlushEntry entry : claimed) {
+                            flushing.remove(entry.uuid, entry);
+                            if (success) {
+                                plugin.getPlayerDataCache().invalidate(entry.uuid.toString());
+                                if (entry.updates.stream().anyMatch(SavePlayerData::hasFullStatistics)) {
+                                    plugin.getLiveStatistics().confirmBaseline(entry.uuid);
+                                }
+                            } else {
+                                entry.updates.forEach(plugin.getPendingSaves()::add);
+                            }
+                            entry.written.complete(null);
+                        }
+                    }
+                    return success
+                            ? new FlushResult(claimed.size(), readFailures.get())
+                            : new FlushResult(0, claimed.size() + readFailures.get());
+                });
+    }
+
+    /**
+     * 创建一次保存的增量数据，可直接暂存到本地
+     *
+     * @param uuid          玩家UUID
+     * @param playerName    玩家名称
+     * @param firstPlayed   首次加入时间
+     * @param activeSeconds 需要累加的在线秒数
+     * @param afkSeconds    需要累加的挂机秒数
+     * @param statistics    统计数据，为null时保留原有统计
+     * @return 增量数据
+     */
+    private JsonObject createUpdate(UUID uuid, String playerName, long firstPlayed,
+                                    long activeSeconds, long afkSeconds, JsonObject statistics) {
+        JsonObject update = new JsonObject();
+        update.addProperty("uuid", uuid.toString());
+        update.addProperty("playerName", playerName);
+        update.addProperty("firstPlayed", firstPlayed);
+        update.addProperty("activeSeconds", activeSeconds);
+        update.addProperty("afkSeconds", afkSeconds);
+        update.addProperty("savedAt", System.currentTimeMillis());
+        update.addProperty("dataVersion", mcVersion);
+        if (statistics != null) {
+            update.add("statistics", statistics);
+        }
+        return update;
+    }
+
+    /**
+     * 将增量数据合并到数据库中已有的数据
+     * 若已有数据的保存时间晚于增量（暂存后回放的情况），统计逐项取较大值，不覆盖更新的统计，
+     * 也不丢弃增量中已有数据尚未包含的统计
+     *
+     * @param existingData 数据库中的数据，可以为null
+     * @param update       增量数据
+     * @return 合并后的数据
+     */
+    private static JsonObject mergePlayerData(JsonObject existingData, JsonObject update) {
+        if (existingData == null) {
+            existingData = new JsonObject();
+        }
+
+        // 获取或创建 meta 对象
+        JsonObject meta;
+        if (existingData.has("meta")) {
+            meta = existingData.getAsJsonObject("meta");
+        } else {
+            meta = new JsonObject();
+        }
+
+        // 累加尚未写入检查点的在线时间，挂机时间单独记录
+        long totalOnlineTime = 0;
+        if (meta.has("onlineTimeInSeconds")) {
+            totalOnlineTime = meta.get("onlineTimeInSeconds").getAsLong();
+        }
+        long totalAfkTime = 0;
+        if (meta.has("afkTimeInSeconds")) {
+            totalAfkTime = meta.get("afkTimeInSeconds").getAsLong();
+        }
+
+        long lastSaveAt = 0;
+        if (meta.has("lastSaveAt")) {
+            lastSaveAt = meta.get("lastSaveAt").getAsLong();
+        }
+        long savedAt = update.get("savedAt").getAsLong();
+        boolean stale = lastSaveAt > savedAt;
+
+        meta.addProperty("onlineTimeInSeconds", totalOnlineTime + update.get("activeSeconds").getAsLong());
+        meta.addProperty("afkTimeInSeconds", totalAfkTime + update.get("afkSeconds").getAsLong());
+        meta.addProperty("lastSaveAt", Math.max(lastSaveAt, savedAt));
+        // 已有数据在读取时已升级到当前结构版本
+        meta.addProperty("schemaVersion", SchemaRegistry.CURRENT_VERSION);
+        if (!stale) {
+            meta.addProperty("firstJoinDate", update.get("firstPlayed").getAsLong());
+            meta.addProperty("playerName", update.get("playerName").getAsString());
+        }
+        existingData.add("meta", meta);
+
+        JsonObject statistics = update.has("statistics") ? update.getAsJsonObject("statistics") : null;
+        if (statistics != null && statistics.has("partial")) {
+            mergeChanges(existingData, statistics, stale);
+        } else if (statistics != null && stale) {
+            for (String section : StatKeys.SECTIONS) {
+                mergeHigher(getOrCreateSection(existingData, section), statistics.getAsJsonObject(section));
             }
+        } else if (statistics != null) {
+            for (String section : StatKeys.SECTIONS) {
+                existingData.add(section, statistics.get(section));
+            }
+        }
 
-            // 保存更新后的数据
-            plugin.getMySQL().saveData(uuid.toString(), existingData, getMcVersion());
-        } catch (Exception e) {
-            plugin.getLogger().log(Level.SEVERE, "保存玩家 " + playerName + " 的统计数据时发生错误", e);
+        return existingData;
+    }
+
+    /**
+     * 将实时统计模式下变化的统计合并到已有数据，方块挖掘/放置总数按变化量累加
+     *
+     * @param existingData 数据库中的数据
+     * @param changes      变化的统计
+     * @param keepHigher   已有数据更新时只在变化的值更大时才写入
+     */
+    private static void mergeChanges(JsonObject existingData, JsonObject changes, boolean keepHigher) {
+        JsonObject general = getOrCreateSection(existingData, "general");
+        JsonObject blocks = getOrCreateSection(existingData, "blocks");
+
+        long minedDelta = 0;
+        long placedDelta = 0;
+        for (Map.Entry<String, JsonElement> entry : changes.getAsJsonObject("blocks").entrySet()) {
+            String key = entry.getKey();
+            long previous = blocks.has(key) ? blocks.get(key).getAsLong() : 0;
+            long delta = entry.getValue().getAsLong() - previous;
+            if (keepHigher && delta <= 0) {
+                continue;
+            }
+            if (key.startsWith("MINE_")) {
+                minedDelta += delta;
+            } else {
+                placedDelta += delta;
+            }
+            blocks.add(key, entry.getValue());
+        }
+
+        if (keepHigher) {
+            mergeHigher(general, changes.getAsJsonObject("general"));
+        } else {
+            for (Map.Entry<String, JsonElement> entry : changes.getAsJsonObject("general").entrySet()) {
+                general.add(entry.getKey(), entry.getValue());
+            }
+        }
+        long totalMined = general.has("TOTAL_BLOCKS_MINED") ? general.get("TOTAL_BLOCKS_MINED").getAsLong() : 0;
+        long totalPlaced = general.has("TOTAL_BLOCKS_PLACED") ? general.get("TOTAL_BLOCKS_PLACED").getAsLong() : 0;
+        general.addProperty("TOTAL_BLOCKS_MINED", totalMined + minedDelta);
+        general.addProperty("TOTAL_BLOCKS_PLACED", totalPlaced + placedDelta);
+
+        for (String sectionName : new String[]{"entities", "items"}) {
+            JsonObject section = getOrCreateSection(existingData, sectionName);
+            if (keepHigher) {
+                mergeHigher(section, changes.getAsJsonObject(sectionName));
+                continue;
+            }
+            for (Map.Entry<String, JsonElement> entry : changes.getAsJsonObject(sectionName).entrySet()) {
+                section.add(entry.getKey(), entry.getValue());
+            }
         }
     }
 
     /**
-     * 获取Minecraft版本号，增加错误处理
+     * 逐项合并统计，只保留较大的值；统计只增不减，较大的值即较新的值
+     *
+     * @param section 已有数据的分区
+     * @param values  要合并的统计
+     */
+    private static void mergeHigher(JsonObject section, JsonObject values) {
+        if (values == null) {
+            return;
+        }
+        for (Map.Entry<String, JsonElement> entry : values.entrySet()) {
+            JsonElement current = section.get(entry.getKey());
+            if (current == null || current.getAsLong() < entry.getValue().getAsLong()) {
+                section.add(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static JsonObject getOrCreateSection(JsonObject data, String name) {
+        if (data.has(name) && data.get(name).isJsonObject()) {
+            return data.getAsJsonObject(name);
+        }
+        JsonObject section = new JsonObject();
+        data.add(name, section);
+        return section;
+    }
+
+    /**
+     * 收集玩家的全部统计数据，须在主线程调用
+     *
+     * @param player 玩家
+     * @return 按 general/blocks/entities/items 分区的统计数据
+     */
+    public JsonObject collectStatistics(Player player) {
+        // 实时统计模式下只需读取无类型统计，其余取自计数器
+        JsonObject changes = plugin.getLiveStatistics().collectChanges(player.getUniqueId());
+        if (changes != null) {
+            changes.add("general", collectGeneralStatistics(player, player.getName(), false));
+            changes.addProperty("partial", true);
+            return changes;
+        }
+
+        JsonObject statistics = snapshotStatistics(player);
+
+        // 之后的变化从这次完整读取开始记录，完整数据写入成功后才改为只写出变化
+        plugin.getLiveStatistics().resetChanges(player.getUniqueId());
+        return statistics;
+    }
+
+    /**
+     * 完整读取玩家当前的统计数据，不影响实时统计的变化标记，须在主线程调用
+     *
+     * @param player 玩家
+     * @return 按 general/blocks/entities/items 分区的统计数据
+     */
+    public JsonObject snapshotStatistics(Player player) {
+        JsonObject statistics = new JsonObject();
+        statistics.add("general", collectGeneralStatistics(player, player.getName(), true));
+        statistics.add("blocks", collectBlockStatistics(player));
+        statistics.add("entities", collectEntityStatistics(player));
+        statistics.add("items", collectItemStatistics(player));
+        return statistics;
+    }
+
+    /**
+     * 读取玩家的无类型统计，不含方块挖掘/放置总数，须在主线程调用
+     *
+     * @param player 玩家
+     * @return general 分区的统计数据
+     */
+    public JsonObject snapshotGeneralStatistics(Player player) {
+        return collectGeneralStatistics(player, player.getName(), false);
+    }
+
+    /**
+     * 解析Minecraft版本号，增加错误处理
      *
      * @return Minecraft版本号
      */
-    private String getMcVersion() {
+    private String parseMcVersion() {
         try {
             String version = Bukkit.getBukkitVersion();
             String[] parts = version.split("-");
@@ -156,16 +596,17 @@ public class SavePlayerData implements Listener {
     /**
      * 收集通用统计数据
      *
-     * @param player     玩家
-     * @param playerName 玩家名称（用于日志）
+     * @param player        玩家
+     * @param playerName    玩家名称（用于日志）
+     * @param includeTotals 是否逐个材质累加方块挖掘/放置总数
      * @return 包含通用统计的JSON对象
      */
-    private JsonObject collectGeneralStatistics(Player player, String playerName) {
+    private JsonObject collectGeneralStatistics(Player player, String playerName, boolean includeTotals) {
         JsonObject generalStats = new JsonObject();
         boolean hasMineBlock = false;
         boolean hasPlaceBlock = false;
 
-        for (Statistic stat : UNTYPED_STATISTICS) {
+        for (Statistic stat : StatKeys.UNTYPED_STATISTICS) {
             try {
                 generalStats.addProperty(stat.name(), player.getStatistic(stat));
                 if (stat == Statistic.MINE_BLOCK) {
@@ -180,10 +621,10 @@ public class SavePlayerData implements Listener {
         }
 
         // 只有在 UNTYPED_STATISTICS 中不包含 MINE_BLOCK 时才添加
-        if (!hasMineBlock) {
+        if (includeTotals && !hasMineBlock) {
             try {
                 int totalMined = 0;
-                for (Material material : VALID_BLOCK_MATERIALS) {
+                for (Material material : StatKeys.VALID_BLOCK_MATERIALS) {
                     try {
                         totalMined += player.getStatistic(Statistic.MINE_BLOCK, material);
                     } catch (IllegalArgumentException | UnsupportedOperationException ignored) {
@@ -197,10 +638,10 @@ public class SavePlayerData implements Listener {
         }
 
         // 添加方块放置总数的统计
-        if (!hasPlaceBlock) {
+        if (includeTotals && !hasPlaceBlock) {
             try {
                 int totalPlaced = 0;
-                for (Material material : VALID_BLOCK_MATERIALS) {
+                for (Material material : StatKeys.VALID_BLOCK_MATERIALS) {
                     try {
                         totalPlaced += player.getStatistic(Statistic.USE_ITEM, material);
                     } catch (IllegalArgumentException | UnsupportedOperationException ignored) {
@@ -216,15 +657,6 @@ public class SavePlayerData implements Listener {
         return generalStats;
     }
 
-    private static final Material[] VALID_BLOCK_MATERIALS;
-
-    static {
-        // 在类加载时初始化有效方块材质列表
-        VALID_BLOCK_MATERIALS = java.util.Arrays.stream(Material.values())
-                .filter(material -> !material.isLegacy() && material.isBlock())
-                .toArray(Material[]::new);
-    }
-
     /**
      * 收集方块相关统计数据
      *
@@ -234,15 +666,12 @@ public class SavePlayerData implements Listener {
     private JsonObject collectBlockStatistics(Player player) {
         JsonObject blockStats = new JsonObject();
 
-        for (Material material : VALID_BLOCK_MATERIALS) {
+        for (Material material : StatKeys.VALID_BLOCK_MATERIALS) {
             try {
-                for (Statistic stat : BLOCK_STATISTICS) {
+                for (Statistic stat : StatKeys.BLOCK_STATISTICS) {
                     int count = player.getStatistic(stat, material);
                     if (count > 0) {
-                        String key = stat == Statistic.MINE_BLOCK ?
-                                "MINE_" + material.name() :
-                                "USE_" + material.name();  // 使用 USE 而不是 PLACE
-                        blockStats.addProperty(key, count);
+                        blockStats.addProperty(StatKeys.blockKey(stat, material), count);
                     }
                 }
             } catch (IllegalArgumentException | UnsupportedOperationException e) {
@@ -267,11 +696,10 @@ public class SavePlayerData implements Listener {
 
         for (EntityType entityType : EntityType.values()) {
             try {
-                for (Statistic stat : ENTITY_STATISTICS) {
+                for (Statistic stat : StatKeys.ENTITY_STATISTICS) {
                     int count = player.getStatistic(stat, entityType);
                     if (count > 0) {
-                        String prefix = stat == Statistic.KILL_ENTITY ? "KILL_" : "KILLED_BY_";
-                        entityStats.addProperty(prefix + entityType.name(), count);
+                        entityStats.addProperty(StatKeys.entityKey(stat, entityType), count);
                     }
                 }
             } catch (IllegalArgumentException | UnsupportedOperationException e) {
@@ -294,21 +722,12 @@ public class SavePlayerData implements Listener {
     private JsonObject collectItemStatistics(Player player) {
         JsonObject itemStats = new JsonObject();
 
-        for (Material material : Material.values()) {
-            if (material.isLegacy() || !material.isItem()) {
-                continue;  // 跳过旧版材质和非物品材质
-            }
-
+        for (Material material : StatKeys.VALID_ITEM_MATERIALS) {
             try {
-                for (Statistic stat : ITEM_STATISTICS) {
+                for (Statistic stat : StatKeys.ITEM_STATISTICS) {
                     int count = player.getStatistic(stat, material);
                     if (count > 0) {
-                        String prefix;
-                        if (stat == Statistic.USE_ITEM) prefix = "USE_";
-                        else if (stat == Statistic.BREAK_ITEM) prefix = "BREAK_";
-                        else prefix = "CRAFT_";
-
-                        itemStats.addProperty(prefix + material.name(), count);
+                        itemStats.addProperty(StatKeys.itemKey(stat, material), count);
                     }
                 }
             } catch (IllegalArgumentException | UnsupportedOperationException e) {
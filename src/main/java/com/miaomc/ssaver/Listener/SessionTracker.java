@@ -0,0 +1,431 @@
+package com.miaomc.ssaver.listener;
+
+import com.miaomc.ssaver.SSaver;
+import io.papermc.paper.event.player.AsyncChatEvent;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * 在线时间追踪器
+ * 每秒采样一次，将时间分别累加到活跃时间和挂机时间，并定期增量写入数据库，防止崩服丢失整段在线时间
+ */
+public class SessionTracker implements Listener {
+
+    // 采样间隔（tick）
+    private static final long SAMPLE_PERIOD_TICKS = 20L;
+
+    private final SSaver plugin;
+
+    private final ConcurrentHashMap<UUID, Session> sessions = new ConcurrentHashMap<>();
+    // 完成前跳过该玩家所有会话的检查点，时间留在会话中；按玩家而不是会话记录，
+    // 重新加入后旧会话排在写入链中的检查点同样要暂停
+    private final ConcurrentHashMap<UUID, CompletableFuture<?>> checkpointHolds = new ConcurrentHashMap<>();
+
+    private BukkitTask sampleTask;
+
+    public SessionTracker(SSaver plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 单个玩家的在线会话
+     * 事件线程只写 lastActivity，其余字段由采样任务在锁内更新，采样过程不产生新对象
+     */
+    static final class Session {
+        final long joinTime;
+        volatile long lastActivity;
+        long lastSample;
+        // 尚未写入数据库的毫秒数
+        long pendingActiveMillis;
+        long pendingAfkMillis;
+        // 下次检查点的时间，按加入时间错开，为 0 时在下次采样时安排
+        long nextCheckpoint;
+        boolean ended;
+        // 该玩家的数据库写入链，保证检查点与退出保存按顺序执行
+        CompletableFuture<?> tail = CompletableFuture.completedFuture(null);
+
+        Session(long now) {
+            this.joinTime = now;
+            this.lastActivity = now;
+            this.lastSample = now;
+        }
+
+        Session(long now, CompletableFuture<?> previousTail) {
+            this(now);
+            this.tail = previousTail;
+        }
+    }
+
+    /**
+     * 会话结束时的统计结果
+     *
+     * @param activeSeconds  尚未写入数据库的活跃秒数
+     * @param afkSeconds     尚未写入数据库的挂机秒数
+     * @param sessionSeconds 本次会话总时长（秒）
+     */
+    public record SessionResult(long activeSeconds, long afkSeconds, long sessionSeconds) {
+    }
+
+    /**
+     * 启动采样任务，并为已在线的玩家（如重载插件时）开启会话
+     */
+    public void start() {
+        long now = System.currentTimeMillis();
+        long checkpointIntervalMillis = getCheckpointIntervalMillis();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            Session session = new Session(now);
+            // 重载时所有玩家的会话同时开始，检查点在一个间隔内随机错开
+            if (checkpointIntervalMillis > 0) {
+                session.nextCheckpoint = now + 1 + ThreadLocalRandom.current().nextLong(checkpointIntervalMillis);
+            }
+            sessions.putIfAbsent(player.getUniqueId(), session);
+        }
+        sampleTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::tick, SAMPLE_PERIOD_TICKS, SAMPLE_PERIOD_TICKS);
+    }
+
+    /**
+     * 停止采样任务
+     */
+    public void stop() {
+        if (sampleTask != null) {
+            sampleTask.cancel();
+            sampleTask = null;
+        }
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        long afkTimeoutMillis = plugin.getConfig().getLong("settings.afkTimeout", 300) * 1000L;
+        long checkpointIntervalMillis = getCheckpointIntervalMillis();
+
+        for (Map.Entry<UUID, Session> entry : sessions.entrySet()) {
+            Session session = entry.getValue();
+            boolean due = false;
+            synchronized (session) {
+                // 已结束的会话只等待保存完成，不再计时
+                if (session.ended) {
+                    continue;
+                }
+                sample(session, now, afkTimeoutMillis);
+
+                // 每名玩家从加入时起按间隔写入检查点，不会所有玩家挤在同一次采样中写入
+                if (checkpointIntervalMillis > 0) {
+                    if (session.nextCheckpoint == 0) {
+                        session.nextCheckpoint = session.joinTime + checkpointIntervalMillis;
+                    } else if (now >= session.nextCheckpoint) {
+                        session.nextCheckpoint = now + checkpointIntervalMillis;
+                        due = true;
+                    }
+                }
+            }
+            if (due) {
+                checkpoint(entry.getKey());
+            }
+        }
+    }
+
+    private long getCheckpointIntervalMillis() {
+        return plugin.getConfig().getLong("settings.checkpointInterval", 300) * 1000L;
+    }
+
+    /**
+     * 将上次采样至今的时间计入活跃或挂机时间，调用方需持有 session 锁
+     */
+    private static void sample(Session session, long now, long afkTimeoutMillis) {
+        long elapsed = now - session.lastSample;
+        if (elapsed <= 0) {
+            return;
+        }
+        session.lastSample = now;
+        if (afkTimeoutMillis > 0 && now - session.lastActivity >= afkTimeoutMillis) {
+            session.pendingAfkMillis += elapsed;
+        } else {
+            session.pendingActiveMillis += elapsed;
+        }
+    }
+
+    /**
+     * 将玩家尚未写入的整秒在线时间增量写入数据库
+     *
+     * @param uuid 玩家UUID
+     * @return 写入结果的Future，玩家不在线时直接完成
+     */
+    public CompletableFuture<?> checkpoint(UUID uuid) {
+        Session session = sessions.get(uuid);
+        if (session == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<?> future = enqueue(session, uuid, () -> {
+            CompletableFuture<?> hold = checkpointHolds.get(uuid);
+            if (hold != null && !hold.isDone()) {
+                return CompletableFuture.completedFuture(true);
+            }
+            long[] drained = drain(session);
+            if (drained[0] == 0 && drained[1] == 0) {
+                return CompletableFuture.completedFuture(true);
+            }
+            return plugin.getMySQL().addOnlineTime(uuid.toString(), drained[0], drained[1],
+                            plugin.getSavePlayerData().getDataVersion())
+                    .thenApply(success -> {
+                        if (!success) {
+                            // 写入失败时退回，等待下次检查点或退出时再保存
+                            restore(session, drained[0], drained[1]);
+                        }
+                        return success;
+                    });
+        });
+        return future == null ? CompletableFuture.completedFuture(null) : future;
+    }
+
+    /**
+     * 将数据库操作追加到该玩家的写入链末尾，保证同一玩家的写入按顺序执行
+     *
+     * @param uuid 玩家UUID
+     * @param task 返回数据库操作Future的任务
+     * @return 任务完成的Future，玩家没有会话时直接执行；会话已结束时不执行任务并返回null
+     */
+    public CompletableFuture<?> enqueue(UUID uuid, Supplier<CompletableFuture<?>> task) {
+        Session session = sessions.get(uuid);
+        if (session == null) {
+            return task.get();
+        }
+        return enqueue(session, uuid, task);
+    }
+
+    private CompletableFuture<?> enqueue(Session session, UUID uuid, Supplier<CompletableFuture<?>> task) {
+        synchronized (session) {
+            if (session.ended) {
+                return null;
+            }
+            CompletableFuture<?> next = session.tail
+                    .handle((ignored, ex) -> null)
+                    .thenComposeAsync(ignored -> task.get());
+            session.tail = next.exceptionally(ex -> {
+                plugin.getLogger().log(Level.WARNING, "写入玩家 " + uuid + " 的数据时发生错误", ex);
+                return null;
+            });
+            return next;
+        }
+    }
+
+    /**
+     * 在指定的写入完成前暂停玩家的检查点，用于已读取数据、尚未写回的批量保存，
+     * 期间的检查点增量会被批量写入覆盖。只影响检查点，退出保存照常追加到写入链
+     *
+     * @param uuid  玩家UUID
+     * @param until 完成后恢复检查点
+     */
+    public void holdCheckpoints(UUID uuid, CompletableFuture<?> until) {
+        checkpointHolds.put(uuid, until);
+        until.whenComplete((ignored, ex) -> checkpointHolds.remove(uuid, until));
+    }
+
+    /**
+     * 取出玩家尚未写入数据库的整秒在线时间，不足一秒的部分保留到下次
+     *
+     * @param uuid 玩家UUID
+     * @return {活跃秒数, 挂机秒数}
+     */
+    public long[] drain(UUID uuid) {
+        Session session = sessions.get(uuid);
+        return session == null ? new long[]{0, 0} : drain(session);
+    }
+
+    private static long[] drain(Session session) {
+        synchronized (session) {
+            long activeSeconds = session.pendingActiveMillis / 1000;
+            long afkSeconds = session.pendingAfkMillis / 1000;
+            session.pendingActiveMillis -= activeSeconds * 1000;
+            session.pendingAfkMillis -= afkSeconds * 1000;
+            return new long[]{activeSeconds, afkSeconds};
+        }
+    }
+
+    /**
+     * 退回写入失败的在线时间
+     *
+     * @param uuid          玩家UUID
+     * @param activeSeconds 活跃秒数
+     * @param afkSeconds    挂机秒数
+     */
+    public void restore(UUID uuid, long activeSeconds, long afkSeconds) {
+        Session session = sessions.get(uuid);
+        if (session == null) {
+            plugin.getLogger().warning("玩家 " + uuid + " 已离线，丢失 " + (activeSeconds + afkSeconds) + " 秒在线时间");
+            return;
+        }
+        restore(session, activeSeconds, afkSeconds);
+    }
+
+    private static void restore(Session session, long activeSeconds, long afkSeconds) {
+        synchronized (session) {
+            session.pendingActiveMillis += activeSeconds * 1000;
+            session.pendingAfkMillis += afkSeconds * 1000;
+        }
+    }
+
+    /**
+     * 获取玩家本次会话的时长
+     *
+     * @param uuid 玩家UUID
+     * @return 会话时长（秒），玩家没有会话时返回-1
+     */
+    public long getSessionSeconds(UUID uuid) {
+        Session session = sessions.get(uuid);
+        if (session == null || session.ended) {
+            return -1;
+        }
+        return Math.max(0, (System.currentTimeMillis() - session.joinTime) / 1000);
+    }
+
+    /**
+     * 结束玩家会话，把保存任务追加到该玩家写入链的末尾后立即返回，不等待数据库
+     * 进行中的检查点完成后才计算剩余的在线时间并执行保存；保存完成前会话保留在表中，
+     * 玩家在此期间重新加入时，新会话的写入排在这次保存之后
+     *
+     * @param uuid 玩家UUID
+     * @param save 根据会话结果保存数据的任务
+     * @return 保存完成的Future，玩家没有会话时返回null
+     */
+    public CompletableFuture<?> endSession(UUID uuid, Function<SessionResult, CompletableFuture<?>> save) {
+        Session session = sessions.get(uuid);
+        if (session == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        CompletableFuture<?> next;
+        synchronized (session) {
+            if (session.ended) {
+                return null;
+            }
+            session.ended = true;
+            sample(session, now, plugin.getConfig().getLong("settings.afkTimeout", 300) * 1000L);
+
+            next = session.tail
+                    .handle((ignored, ex) -> null)
+                    .thenComposeAsync(ignored -> save.apply(result(session, now)));
+            session.tail = next.exceptionally(ex -> {
+                plugin.getLogger().log(Level.WARNING, "保存玩家 " + uuid + " 的数据时发生错误", ex);
+                return null;
+            });
+        }
+        removeWhenIdle(uuid, session);
+        return next;
+    }
+
+    /**
+     * 将任务追加到玩家写入链的末尾，会话已结束或玩家不在线时同样排队，用于回放暂存数据等不属于会话的写入
+     * 玩家不在线时临时建立一个已结束的会话保存写入链，期间加入的新会话接在其后
+     *
+     * @param uuid 玩家UUID
+     * @param task 返回数据库操作Future的任务
+     * @return 任务完成的Future，失败由调用方处理
+     */
+    public <T> CompletableFuture<T> runExclusive(UUID uuid, Supplier<CompletableFuture<T>> task) {
+        List<CompletableFuture<T>> result = new ArrayList<>(1);
+        // 在 compute 中追加，与加入时继承写入链、空闲会话的移除互斥
+        Session session = sessions.compute(uuid, (key, current) -> {
+            Session target = current;
+            if (target == null) {
+                target = new Session(System.currentTimeMillis());
+                target.ended = true;
+            }
+            synchronized (target) {
+                CompletableFuture<T> next = target.tail
+                        .handle((ignored, ex) -> null)
+                        .thenComposeAsync(ignored -> task.get());
+                target.tail = next.handle((ignored, ex) -> null);
+                result.add(next);
+            }
+            return target;
+        });
+        removeWhenIdle(uuid, session);
+        return result.get(0);
+    }
+
+    /**
+     * 已结束的会话在写入链执行完后移出表；期间又有任务追加或玩家重新加入时保留，由追加方在其完成后再检查
+     * 须在锁外调用，写入链已完成时回调会在当前线程执行
+     */
+    private void removeWhenIdle(UUID uuid, Session session) {
+        CompletableFuture<?> tail;
+        synchronized (session) {
+            tail = session.tail;
+        }
+        tail.whenComplete((ignored, ex) -> sessions.computeIfPresent(uuid, (key, current) -> {
+            synchronized (current) {
+                return current == session && current.ended && current.tail == tail ? null : current;
+            }
+        }));
+    }
+
+    /**
+     * 读取会话剩余的在线时间，检查点写入失败退回的时间也包含在内
+     */
+    private static SessionResult result(Session session, long endTime) {
+        synchronized (session) {
+            return new SessionResult(
+                    session.pendingActiveMillis / 1000,
+                    session.pendingAfkMillis / 1000,
+                    Math.max(0, (endTime - session.joinTime) / 1000));
+        }
+    }
+
+    private void markActive(Player player) {
+        Session session = sessions.get(player.getUniqueId());
+        if (session != null) {
+            session.lastActivity = System.currentTimeMillis();
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        long now = System.currentTimeMillis();
+        // 上次退出的保存可能还未完成，新会话的写入接在其后
+        sessions.compute(event.getPlayer().getUniqueId(), (uuid, previous) ->
+                previous != null && previous.ended ? new Session(now, previous.tail) : new Session(now));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent event) {
+        // 只看视角变化，被水流推动等被动移动不算活跃
+        if (event.hasChangedOrientation()) {
+            markActive(event.getPlayer());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerInteract(PlayerInteractEvent event) {
+        markActive(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerChat(AsyncChatEvent event) {
+        markActive(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerCommand(PlayerCommandPreprocessEvent event) {
+        markActive(event.getPlayer());
+    }
+}
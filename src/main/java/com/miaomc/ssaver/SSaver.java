@@ -1,14 +1,39 @@
 package com.miaomc.ssaver;
 
 import com.miaomc.ssaver.commands.SsaverCommand;
+import com.miaomc.ssaver.listener.LiveStatistics;
 import com.miaomc.ssaver.listener.SavePlayerData;
+import com.miaomc.ssaver.listener.SessionTracker;
+import com.miaomc.ssaver.utils.DataTransfer;
+import com.miaomc.ssaver.utils.PendingSaves;
+import com.miaomc.ssaver.utils.PlayerDataCache;
+import com.miaomc.ssaver.utils.RedisCache;
+import com.miaomc.ssaver.utils.StatsHttpServer;
 import com.miaomc.ssaver.utils.MySQL;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 public final class SSaver extends JavaPlugin {
 
+    // 卸载时等待玩家数据写入的最长时间
+    private static final long SHUTDOWN_SAVE_TIMEOUT_SECONDS = 30;
+
     private MySQL mySQL;
+    private SessionTracker sessionTracker;
+    private SavePlayerData savePlayerData;
+    private LiveStatistics liveStatistics;
+    private DataTransfer dataTransfer;
+    private PlayerDataCache playerDataCache;
+    private RedisCache redisCache;
+    private PendingSaves pendingSaves;
+    private StatsHttpServer statsHttpServer;
 
     @Override
     public void onEnable() {
@@ -24,9 +49,29 @@ public final class SSaver extends JavaPlugin {
         }
 
         mySQL.initialize();
+        setupRedisCache();
+        this.playerDataCache = new PlayerDataCache(this);
+
+        // 启动在线时间追踪
+        this.sessionTracker = new SessionTracker(this);
+        sessionTracker.start();
+
+        // 启动实时统计计数器（需开启 settings.liveStatistics）
+        this.liveStatistics = new LiveStatistics(this);
+        liveStatistics.start();
 
         // 注册事件监听器
-        getServer().getPluginManager().registerEvents(new SavePlayerData(this), this);
+        this.savePlayerData = new SavePlayerData(this);
+        getServer().getPluginManager().registerEvents(sessionTracker, this);
+        getServer().getPluginManager().registerEvents(liveStatistics, this);
+        getServer().getPluginManager().registerEvents(savePlayerData, this);
+
+        // 数据库不可用时暂存的数据，恢复后定期回放
+        this.pendingSaves = new PendingSaves(this);
+        pendingSaves.start(savePlayerData::replayPending);
+
+        this.dataTransfer = new DataTransfer(this);
+        setupHttpServer();
 
         // 创建命令处理器实例
         SsaverCommand commandHandler = new SsaverCommand(this);
@@ -43,26 +88,98 @@ public final class SSaver extends JavaPlugin {
     @Override
     public void onDisable() {
 
-        // 卸载前，保存全部玩家数据
-        SavePlayerData savePlayerData = new SavePlayerData(this);
+        if (statsHttpServer != null) {
+            statsHttpServer.stop();
+            statsHttpServer = null;
+        }
+        if (sessionTracker != null) {
+            sessionTracker.stop();
+        }
+        if (pendingSaves != null) {
+            pendingSaves.stop();
+        }
 
-        // 遍历所有在线玩家并保存数据
-        Bukkit.getOnlinePlayers().forEach(player -> {
+        // 卸载前，遍历所有在线玩家并保存数据，等待写入完成后再关闭连接池
+        if (savePlayerData != null) {
+            List<CompletableFuture<?>> saves = new ArrayList<>();
+            Bukkit.getOnlinePlayers().forEach(player -> {
+                try {
+                    saves.add(savePlayerData.savePlayerStatistics(player));
+                } catch (Exception e) {
+                    getLogger().severe("保存玩家 " + player.getName() + " 的数据时发生错误: " + e.getMessage());
+                }
+            });
             try {
-                savePlayerData.savePlayerStatistics(player);
-            } catch (Exception e) {
-                getLogger().severe("保存玩家 " + player.getName() + " 的数据时发生错误: " + e.getMessage());
+                CompletableFuture.allOf(saves.toArray(new CompletableFuture[0]))
+                        .get(SHUTDOWN_SAVE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                getLogger().severe("等待玩家数据保存超时，部分数据可能未写入");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                getLogger().severe("保存玩家数据时发生错误: " + e.getCause().getMessage());
             }
-        });
+        }
+
+        if (dataTransfer != null) {
+            dataTransfer.shutdown();
+        }
 
         // 关闭MySQL连接
         if (mySQL != null) {
             mySQL.close();
         }
+        if (redisCache != null) {
+            redisCache.close();
+            redisCache = null;
+        }
 
         getLogger().info("SSaver 插件已禁用，所有玩家数据已保存！");
     }
 
+    /**
+     * 按配置创建或关闭 Redis 共享缓存，重新加载配置时也会调用
+     */
+    public void setupRedisCache() {
+        if (redisCache != null) {
+            redisCache.close();
+            redisCache = null;
+        }
+        if (!getConfig().getBoolean("cache.redis.enabled", false)) {
+            return;
+        }
+
+        try {
+            RedisCache cache = new RedisCache(this);
+            cache.start();
+            this.redisCache = cache;
+            getLogger().info("已启用 Redis 共享缓存");
+        } catch (Exception e) {
+            getLogger().severe("无法启用 Redis 共享缓存，将直接读取数据库: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 按配置启动或停止 HTTP 接口，重新加载配置时也会调用
+     */
+    public void setupHttpServer() {
+        if (statsHttpServer != null) {
+            statsHttpServer.stop();
+            statsHttpServer = null;
+        }
+        if (!getConfig().getBoolean("http.enabled", false)) {
+            return;
+        }
+
+        try {
+            StatsHttpServer server = new StatsHttpServer(this);
+            server.start();
+            this.statsHttpServer = server;
+        } catch (Exception e) {
+            getLogger().severe("无法启动 HTTP 接口: " + e.getMessage());
+        }
+    }
+
     /**
      * 获取MySQL实例
      *
@@ -71,4 +188,67 @@ public final class SSaver extends JavaPlugin {
     public MySQL getMySQL() {
         return mySQL;
     }
+
+    /**
+     * 获取在线时间追踪器
+     *
+     * @return 在线时间追踪器
+     */
+    public SessionTracker getSessionTracker() {
+        return sessionTracker;
+    }
+
+    /**
+     * 获取实时统计计数器
+     *
+     * @return 实时统计计数器
+     */
+    public LiveStatistics getLiveStatistics() {
+        return liveStatistics;
+    }
+
+    /**
+     * 获取玩家数据保存监听器
+     *
+     * @return 玩家数据保存监听器
+     */
+    public SavePlayerData getSavePlayerData() {
+        return savePlayerData;
+    }
+
+    /**
+     * 获取离线玩家数据缓存
+     *
+     * @return 离线玩家数据缓存
+     */
+    public PlayerDataCache getPlayerDataCache() {
+        return playerDataCache;
+    }
+
+    /**
+     * 获取 Redis 共享缓存
+     *
+     * @return Redis 共享缓存，未启用时为null
+     */
+    public RedisCache getRedisCache() {
+        return redisCache;
+    }
+
+    /**
+     * 获取本地暂存
+     *
+     * @return 本地暂存
+     */
+    public PendingSaves getPendingSaves() {
+        return pendingSaves;
+    }
+
+    /**
+     * 获取数据导出/导入工具
+     *
+     * @return 数据导出/导入工具
+     */
+    public DataTransfer getDataTransfer() {
+        return dataTransfer;
+    }
 }
\ No newline at end of file
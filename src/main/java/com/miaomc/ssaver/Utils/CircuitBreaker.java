@@ -0,0 +1,351 @@
+package com.miaomc.ssaver.utils;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据库熔断器与自适应并发限制
+ * <p>
+ * 熔断：统计最近若干次调用，失败或超过慢调用阈值的比例达到上限时熔断，熔断期间直接拒绝请求；
+ * 熔断时间过后进入半开状态，只放行少量探测请求，连续成功后恢复，失败则重新熔断。
+ * <p>
+ * 并发限制：按加性增、乘性减调整允许同时执行的请求数，调用变慢或失败时迅速收紧，恢复正常后逐步放开。
+ * 正常状态下超出限制的请求进入有界队列，等待其他调用结束后按顺序放行，超时或队列已满时才拒绝，
+ * 检查点、批量保存等瞬时突发不会因此失败；熔断与半开状态下不排队，直接拒绝。
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    // 半开状态下连续成功多少次后恢复
+    private static final int PROBE_SUCCESSES_TO_CLOSE = 3;
+    // 并发限制的下限
+    private static final double MIN_LIMIT = 1;
+
+    private final long slowCallNanos;
+    private final int failureRateThreshold;
+    private final long openNanos;
+    private final int probeConcurrency;
+    private final double maxLimit;
+    private final long maxWaitMillis;
+    private final int maxQueued;
+
+    // 最近调用结果的环形缓冲，true 表示失败或慢调用
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    private double limit;
+    private int inFlight;
+    private long rejected;
+    // 等待许可的请求，按到达顺序放行
+    private final ArrayDeque<CompletableFuture<Boolean>> waiters = new ArrayDeque<>();
+
+    /**
+     * 从配置文件读取参数
+     *
+     * @param config  配置文件
+     * @param maxPool 连接池大小，作为并发限制的上限
+     */
+    public CircuitBreaker(FileConfiguration config, int maxPool) {
+        this.slowCallNanos = config.getLong("circuitBreaker.slowCallMillis", 1000) * 1_000_000L;
+        this.failureRateThreshold = config.getInt("circuitBreaker.failureRateThreshold", 50);
+        this.openNanos = config.getLong("circuitBreaker.openSeconds", 30) * 1_000_000_000L;
+        this.probeConcurrency = Math.max(1, config.getInt("circuitBreaker.probeConcurrency", 2));
+        this.window = new boolean[Math.max(1, config.getInt("circuitBreaker.windowSize", 20))];
+        this.maxLimit = Math.max(MIN_LIMIT, maxPool);
+        this.limit = maxLimit;
+        this.maxWaitMillis = Math.max(0, config.getLong("circuitBreaker.maxWaitMillis", 5000));
+        this.maxQueued = Math.max(0, config.getInt("circuitBreaker.maxQueued", 1000));
+    }
+
+    /**
+     * 申请执行一次数据库调用，得到许可后必须在调用结束后调用 {@link #release(long, boolean)}
+     * 并发已满时排队等待，不阻塞调用线程
+     *
+     * @return 是否允许执行的Future，立即可用时已完成
+     */
+    public CompletableFuture<Boolean> acquire() {
+        CompletableFuture<Boolean> waiter;
+        synchronized (this) {
+            Boolean granted = tryGrant();
+            if (granted != null) {
+                return CompletableFuture.completedFuture(granted);
+            }
+            if (waiters.size() >= maxQueued || maxWaitMillis == 0) {
+                rejected++;
+                return CompletableFuture.completedFuture(false);
+            }
+            waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+        }
+        CompletableFuture.delayedExecutor(maxWaitMillis, TimeUnit.MILLISECONDS).execute(() -> expire(waiter));
+        return waiter;
+    }
+
+    /**
+     * 申请执行一次数据库调用，并发已满时阻塞等待，请勿在主线程调用
+     *
+     * @return 是否允许执行
+     */
+    public boolean acquireBlocking() {
+        return acquire().join();
+    }
+
+    /**
+     * 尝试立即取得许可，调用方需持有锁
+     *
+     * @return 允许或拒绝，需要排队时返回null
+     */
+    private Boolean tryGrant() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                rejected++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probesInFlight = 0;
+            probeSuccesses = 0;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight >= probeConcurrency) {
+                rejected++;
+                return false;
+            }
+            probesInFlight++;
+        } else if (inFlight >= (int) limit || !waiters.isEmpty()) {
+            return null;
+        }
+
+        inFlight++;
+        return true;
+    }
+
+    private void expire(CompletableFuture<Boolean> waiter) {
+        synchronized (this) {
+            if (!waiters.remove(waiter)) {
+                return;
+            }
+            rejected++;
+        }
+        waiter.complete(false);
+    }
+
+    /**
+     * 归还未使用的许可（如任务提交失败），不计入调用统计
+     */
+    public void abandon() {
+        List<CompletableFuture<Boolean>> granted;
+        synchronized (this) {
+            inFlight--;
+            if (state == State.HALF_OPEN) {
+                probesInFlight = Math.max(0, probesInFlight - 1);
+            }
+            granted = grantWaiters();
+        }
+        granted.forEach(waiter -> waiter.complete(true));
+    }
+
+    /**
+     * 记录一次调用的结果
+     *
+     * @param latencyNanos 调用耗时（纳秒）
+     * @param success      是否成功
+     */
+    public void release(long latencyNanos, boolean success) {
+        List<CompletableFuture<Boolean>> granted;
+        List<CompletableFuture<Boolean>> shed = List.of();
+        synchronized (this) {
+            State before = state;
+            update(latencyNanos, success);
+            if (state != State.CLOSED && before == State.CLOSED) {
+                shed = shedWaiters();
+            }
+            granted = grantWaiters();
+        }
+        // 在锁外完成，后续回调不会在持有锁时执行
+        shed.forEach(waiter -> waiter.complete(false));
+        granted.forEach(waiter -> waiter.complete(true));
+    }
+
+    private void update(long latencyNanos, boolean success) {
+        inFlight--;
+        boolean bad = !success || latencyNanos > slowCallNanos;
+
+        // 加性增、乘性减
+        if (bad) {
+            limit = Math.max(MIN_LIMIT, limit * 0.7);
+        } else {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+
+        if (state == State.HALF_OPEN) {
+            // 熔断前发出的调用也可能在半开状态下结束
+            probesInFlight = Math.max(0, probesInFlight - 1);
+            if (bad) {
+                open();
+            } else if (++probeSuccesses >= PROBE_SUCCESSES_TO_CLOSE) {
+                close();
+            }
+            return;
+        }
+
+        if (state == State.CLOSED) {
+            record(bad);
+            if (shouldOpen()) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * 检查长时间运行的后台任务（如导出时的游标读取）能否继续，不占用并发许可
+     * 后台任务使用独立连接，不与连接池竞争，只在熔断或半开时停下，由调用方每批检查一次
+     *
+     * @return 是否允许继续
+     */
+    public synchronized boolean allowBackground() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+
+    /**
+     * 记录后台任务的一次失败，计入熔断统计但不改变并发限制
+     * 成功不记录：一次导出包含大量批次，会把普通调用的结果挤出统计窗口
+     */
+    public void recordBackgroundFailure() {
+        List<CompletableFuture<Boolean>> shed = List.of();
+        synchronized (this) {
+            if (state != State.CLOSED) {
+                return;
+            }
+            record(true);
+            if (shouldOpen()) {
+                open();
+                shed = shedWaiters();
+            }
+        }
+        shed.forEach(waiter -> waiter.complete(false));
+    }
+
+    /**
+     * 熔断后不再排队，取出等待中的请求全部拒绝，调用方需持有锁，返回的Future须在锁外完成
+     */
+    private List<CompletableFuture<Boolean>> shedWaiters() {
+        List<CompletableFuture<Boolean>> shed = new ArrayList<>(waiters);
+        rejected += waiters.size();
+        waiters.clear();
+        return shed;
+    }
+
+    private boolean shouldOpen() {
+        return windowCount == window.length && windowFailures * 100 >= failureRateThreshold * windowCount;
+    }
+
+    /**
+     * 按当前并发限制放行排队的请求，调用方需持有锁，返回的Future须在锁外完成
+     */
+    private List<CompletableFuture<Boolean>> grantWaiters() {
+        if (state != State.CLOSED || waiters.isEmpty()) {
+            return List.of();
+        }
+        List<CompletableFuture<Boolean>> granted = new ArrayList<>();
+        while (inFlight < (int) limit && !waiters.isEmpty()) {
+            inFlight++;
+            granted.add(waiters.poll());
+        }
+        return granted;
+    }
+
+    private void record(boolean bad) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = bad;
+        if (bad) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+        limit = Math.max(limit, MIN_LIMIT + 1);
+    }
+
+    /**
+     * 获取当前状态，熔断时间已过但尚未有请求时仍显示为熔断
+     *
+     * @return 当前状态
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 获取当前的并发限制
+     *
+     * @return 并发限制
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * 获取正在执行的调用数
+     *
+     * @return 正在执行的调用数
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * 获取正在排队等待许可的请求数
+     *
+     * @return 排队的请求数
+     */
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    /**
+     * 获取累计拒绝的请求数
+     *
+     * @return 累计拒绝的请求数
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+}
@@ -0,0 +1,382 @@
+package com.miaomc.ssaver.utils;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.miaomc.ssaver.SSaver;
+import org.bukkit.command.CommandSender;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 批量导出/导入玩家数据
+ * 在独立的后台线程中执行，同一时间只允许一个任务，并按配置限制每秒处理的行数
+ */
+public class DataTransfer {
+
+    private static final String CSV_HEADER = "uuid,serverName,dataVersion,data";
+    private static final long PROGRESS_INTERVAL_MILLIS = 5000;
+
+    private final SSaver plugin;
+    private final ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public DataTransfer(SSaver plugin) {
+        this.plugin = plugin;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SSaver-Transfer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * 获取导出文件所在目录
+     *
+     * @return 导出目录
+     */
+    public File getExportFolder() {
+        return new File(plugin.getDataFolder(), "exports");
+    }
+
+    /**
+     * 是否有任务正在执行
+     *
+     * @return 是否正在执行
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * 导出全部数据到 gzip 压缩的 NDJSON 或 CSV 文件
+     *
+     * @param sender 命令发送者，用于接收进度
+     * @param format 文件格式，json 或 csv
+     * @return 已有任务在执行时返回false
+     */
+    public boolean exportData(CommandSender sender, String format) {
+        boolean csv = "csv".equalsIgnoreCase(format);
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+
+        File folder = getExportFolder();
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File file = new File(folder, "ssaver-" + timestamp + (csv ? ".csv.gz" : ".ndjson.gz"));
+        sender.sendMessage("§a开始在后台导出数据...");
+
+        executor.execute(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                if (!folder.exists() && !folder.mkdirs()) {
+                    throw new IOException("无法创建导出目录 " + folder.getPath());
+                }
+
+                int fetchSize = plugin.getConfig().getInt("transfer.fetchSize", 500);
+                Throttle throttle = new Throttle(sender, "导出");
+
+                try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                        new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8))) {
+
+                    if (csv) {
+                        writer.write(CSV_HEADER);
+                        writer.write('\n');
+                    }
+
+                    plugin.getMySQL().streamAllData(fetchSize, row -> {
+                        writer.write(csv ? toCsvLine(row) : toJsonLine(row));
+                        writer.write('\n');
+                        throttle.acquire(1);
+                    });
+                }
+
+                sender.sendMessage("§a导出完成，共 " + throttle.count + " 行，用时 "
+                        + (System.currentTimeMillis() - start) / 1000 + " 秒，文件：" + file.getName());
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.SEVERE, "导出数据失败", e);
+                sender.sendMessage("§c导出数据失败：" + e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * 从导出目录中的文件导入数据，按批写入数据库
+     *
+     * @param sender     命令发送者，用于接收进度
+     * @param fileName   导出目录中的文件名
+     * @param serverName 写入的服务器名称，为null时保留文件中的服务器名称
+     * @return 已有任务在执行时返回false
+     */
+    public boolean importData(CommandSender sender, String fileName, String serverName) {
+        Path folder = getExportFolder().toPath().toAbsolutePath().normalize();
+        Path path = folder.resolve(fileName).normalize();
+        if (!path.startsWith(folder)) {
+            sender.sendMessage("§c只能导入 exports 目录中的文件！");
+            return true;
+        }
+        File file = path.toFile();
+        if (!file.isFile()) {
+            sender.sendMessage("§c文件不存在：" + fileName);
+            return true;
+        }
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+
+        boolean csv = fileName.toLowerCase().contains(".csv");
+        boolean gzip = fileName.toLowerCase().endsWith(".gz");
+        sender.sendMessage("§a开始在后台导入数据...");
+
+        executor.execute(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                int batchSize = plugin.getConfig().getInt("transfer.batchSize", 500);
+                Throttle throttle = new Throttle(sender, "导入");
+                List<StoredRow> batch = new ArrayList<>(batchSize);
+                long skipped = 0;
+
+                // 两个流都作为资源声明，GZIPInputStream 构造失败（文件不是 gzip）时文件句柄也会关闭
+                try (InputStream fileInput = new FileInputStream(file);
+                     InputStream input = gzip ? new GZIPInputStream(fileInput) : fileInput;
+                     BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+                    String line;
+                    boolean first = true;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isBlank() || (csv && first && line.equals(CSV_HEADER))) {
+                            first = false;
+                            continue;
+                        }
+                        first = false;
+
+                        StoredRow row;
+                        try {
+                            row = csv ? fromCsvLine(line) : fromJsonLine(line);
+                        } catch (RuntimeException e) {
+                            skipped++;
+                            continue;
+                        }
+                        if (serverName != null) {
+                            row = new StoredRow(row.uuid(), serverName, row.data(), row.dataVersion());
+                        }
+
+                        batch.add(row);
+                        if (batch.size() >= batchSize) {
+                            plugin.getMySQL().upsertBatch(batch);
+                            throttle.acquire(batch.size());
+                            batch.clear();
+                        }
+                    }
+                }
+
+                plugin.getMySQL().upsertBatch(batch);
+                throttle.acquire(batch.size());
+
+                sender.sendMessage("§a导入完成，共 " + throttle.count + " 行，跳过 " + skipped + " 行无效数据，用时 "
+                        + (System.currentTimeMillis() - start) / 1000 + " 秒");
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.SEVERE, "导入数据失败", e);
+                sender.sendMessage("§c导入数据失败：" + e.getMessage());
+            } finally {
+                // 导入的行直接写入数据库，本地缓存中的旧数据需要丢弃，失败时已写入的部分同样如此
+                plugin.getPlayerDataCache().clear();
+                running.set(false);
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * 将表中所有旧结构版本的数据升级到当前版本
+     * 读取时本来就会按需升级，这里只是在空闲时提前写回；写入时比对原数据，期间被正常保存改动过的行跳过，由下次读取时升级
+     *
+     * @param sender 命令发送者，用于接收进度
+     * @return 已有任务在执行时返回false
+     */
+    public boolean upgradeData(CommandSender sender) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+
+        sender.sendMessage("§a开始在后台升级数据结构...");
+
+        executor.execute(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                int fetchSize = plugin.getConfig().getInt("transfer.fetchSize", 500);
+                int batchSize = plugin.getConfig().getInt("transfer.batchSize", 500);
+                Throttle throttle = new Throttle(sender, "检查");
+                List<StoredRow> batch = new ArrayList<>(batchSize);
+                List<String> originals = new ArrayList<>(batchSize);
+                long[] result = new long[2]; // 升级数，跳过数
+
+                plugin.getMySQL().streamAllData(fetchSize, row -> {
+                    throttle.acquire(1);
+                    JsonObject data;
+                    try {
+                        data = JsonParser.parseString(row.data()).getAsJsonObject();
+                    } catch (RuntimeException e) {
+                        return;
+                    }
+                    if (!SchemaRegistry.upgrade(data, row.dataVersion())) {
+                        return;
+                    }
+
+                    batch.add(new StoredRow(row.uuid(), row.serverName(), data.toString(), row.dataVersion()));
+                    originals.add(row.data());
+                    if (batch.size() >= batchSize) {
+                        writeUpgraded(batch, originals, result);
+                    }
+                });
+                writeUpgraded(batch, originals, result);
+
+                sender.sendMessage("§a数据结构升级完成，检查 " + throttle.count + " 行，升级 " + result[0]
+                        + " 行，跳过 " + result[1] + " 行期间已变化的数据，用时 "
+                        + (System.currentTimeMillis() - start) / 1000 + " 秒");
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.SEVERE, "升级数据结构失败", e);
+                sender.sendMessage("§c升级数据结构失败：" + e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        });
+
+        return true;
+    }
+
+    private void writeUpgraded(List<StoredRow> batch, List<String> originals, long[] result) throws Exception {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int updated = plugin.getMySQL().compareAndSetBatch(batch, originals);
+        result[0] += updated;
+        result[1] += batch.size() - updated;
+        batch.clear();
+        originals.clear();
+    }
+
+    /**
+     * 停止后台线程，正在执行的任务会被中断
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static String toJsonLine(StoredRow row) {
+        JsonObject object = new JsonObject();
+        object.addProperty("uuid", row.uuid());
+        object.addProperty("serverName", row.serverName());
+        object.addProperty("dataVersion", row.dataVersion());
+        object.add("data", JsonParser.parseString(row.data()));
+        return object.toString();
+    }
+
+    private static StoredRow fromJsonLine(String line) {
+        JsonObject object = JsonParser.parseString(line).getAsJsonObject();
+        return new StoredRow(
+                object.get("uuid").getAsString(),
+                object.get("serverName").getAsString(),
+                object.getAsJsonObject("data").toString(),
+                object.get("dataVersion").getAsString());
+    }
+
+    private static String toCsvLine(StoredRow row) {
+        return escapeCsv(row.uuid()) + "," + escapeCsv(row.serverName()) + ","
+                + escapeCsv(row.dataVersion()) + "," + escapeCsv(row.data());
+    }
+
+    private static String escapeCsv(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static StoredRow fromCsvLine(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+
+        if (fields.size() != 4) {
+            throw new IllegalArgumentException("CSV 列数错误：" + fields.size());
+        }
+        // 校验数据是合法的JSON对象
+        JsonParser.parseString(fields.get(3)).getAsJsonObject();
+        return new StoredRow(fields.get(0), fields.get(1), fields.get(3), fields.get(2));
+    }
+
+    /**
+     * 限速并定期汇报进度
+     */
+    private final class Throttle {
+        private final CommandSender sender;
+        private final String action;
+        private final long start = System.nanoTime();
+        private final int maxRowsPerSecond = plugin.getConfig().getInt("transfer.maxRowsPerSecond", 2000);
+        private long count;
+        private long lastReport = System.currentTimeMillis();
+
+        Throttle(CommandSender sender, String action) {
+            this.sender = sender;
+            this.action = action;
+        }
+
+        void acquire(int rows) throws InterruptedException {
+            count += rows;
+
+            if (maxRowsPerSecond > 0) {
+                // 按总行数计算应当经过的时间，处理过快时休眠补足
+                long expectedNanos = count * 1_000_000_000L / maxRowsPerSecond;
+                long aheadMillis = (expectedNanos - (System.nanoTime() - start)) / 1_000_000;
+                if (aheadMillis > 0) {
+                    Thread.sleep(aheadMillis);
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastReport >= PROGRESS_INTERVAL_MILLIS) {
+                lastReport = now;
+                long elapsedSeconds = Math.max(1, (System.nanoTime() - start) / 1_000_000_000L);
+                sender.sendMessage("§7已" + action + " " + count + " 行（" + count / elapsedSeconds + " 行/秒）");
+            }
+        }
+    }
+}
@@ -11,16 +11,26 @@ import org.bukkit.scheduler.BukkitRunnable;
 
 import java.sql.*;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 
 public class MySQL {
+    // 连接池大小，同时也是并发限制的上限
+    private static final int MAXIMUM_POOL_SIZE = 10;
+
     private final SSaver plugin;
     private HikariDataSource dataSource;
+    // 导出时单独建立连接所需的参数
+    private String streamingUrl;
+    private String username;
+    private String password;
     private final String tablename;
     private final String serverName;
+    private final CircuitBreaker circuitBreaker;
 
     /**
      * 构造方法
@@ -33,6 +43,7 @@ public class MySQL {
         String configTableName = config.getString("database.tablename");
         this.tablename = (configTableName == null || configTableName.isEmpty()) ? "playerStatistics" : configTableName;
         this.serverName = config.getString("settings.serverName", "root");
+        this.circuitBreaker = new CircuitBreaker(config, MAXIMUM_POOL_SIZE);
         setupPool();
     }
 
@@ -44,16 +55,25 @@ public class MySQL {
         String host = config.getString("database.host", "localhost");
         int port = config.getInt("database.port", 3306);
         String dbName = config.getString("database.name", "minecraft");
-        String username = config.getString("database.username", "root");
-        String password = config.getString("database.password", "");
+        this.username = config.getString("database.username", "root");
+        this.password = config.getString("database.password", "");
+        String jdbcUrl = config.getString("database.url", "");
+        if (jdbcUrl == null || jdbcUrl.isEmpty()) {
+            // 批量写入时由驱动改写为多值 INSERT，一次往返写入整批
+            jdbcUrl = "jdbc:mysql://" + host + ":" + port + "/" + dbName +
+                    "?useSSL=false&autoReconnect=true&useUnicode=true&characterEncoding=utf8&rewriteBatchedStatements=true";
+            this.streamingUrl = jdbcUrl + "&useCursorFetch=true&connectTimeout=" + config.getLong("database.connectionTimeout", 5000);
+        } else {
+            // 自定义地址时原样使用，游标等参数由使用者自行添加
+            this.streamingUrl = jdbcUrl;
+        }
 
         HikariConfig hikariConfig = new HikariConfig();
-        hikariConfig.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + dbName +
-                "?useSSL=false&autoReconnect=true&useUnicode=true&characterEncoding=utf8");
+        hikariConfig.setJdbcUrl(jdbcUrl);
         hikariConfig.setUsername(username);
         hikariConfig.setPassword(password);
-        hikariConfig.setMaximumPoolSize(10);
-        hikariConfig.setConnectionTimeout(30000);
+        hikariConfig.setMaximumPoolSize(MAXIMUM_POOL_SIZE);
+        hikariConfig.setConnectionTimeout(config.getLong("database.connectionTimeout", 5000));
         hikariConfig.setPoolName("SSaver-Pool");
         hikariConfig.setMinimumIdle(3);
         hikariConfig.setIdleTimeout(60000);
@@ -223,7 +243,8 @@ public class MySQL {
      */
     public CompletableFuture<Boolean> saveData(String uuid, JsonObject data, String dataVersion) {
         Gson gson = new Gson();
-        if (plugin.getConfig().getBoolean("settings.saveAsync", true)) {
+        // 插件卸载时无法再注册Bukkit任务，直接在线程池中写入
+        if (plugin.getConfig().getBoolean("settings.saveAsync", true) && plugin.isEnabled()) {
             return saveDataAsync(uuid, data, dataVersion);
         } else {
             return doSaveData(uuid, gson.toJson(data), dataVersion);
@@ -239,12 +260,11 @@ public class MySQL {
      * @return 操作结果的Future
      */
     private CompletableFuture<Boolean> doSaveData(String uuid, String jsonData, String dataVersion) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyGuarded(connection -> {
             String sql = "INSERT INTO `" + tablename + "` (uuid, serverName, data, dataVersion) VALUES (?, ?, ?, ?) " +
                     "ON DUPLICATE KEY UPDATE data = ?, dataVersion = ?, updateDate = CURRENT_TIMESTAMP";
 
-            try (Connection connection = dataSource.getConnection();
-                 PreparedStatement statement = connection.prepareStatement(sql)) {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
 
                 statement.setString(1, uuid);
                 statement.setString(2, serverName);
@@ -253,17 +273,19 @@ public class MySQL {
                 statement.setString(5, jsonData);
                 statement.setString(6, dataVersion);
 
-                int rowsAffected = statement.executeUpdate();
-
-                if (plugin.getConfig().getBoolean("settings.showSaveMessages", true)) {
-                    plugin.getLogger().info("已保存玩家 " + uuid + " 在服务器 " + serverName + " 的数据");
-                }
+                return statement.executeUpdate() > 0;
+            }
+        }).thenApply(saved -> {
+            // 许可与连接归还后再写共享缓存，Redis 变慢不占用数据库并发，也不计入熔断器的耗时
+            writeCache(List.of(new StoredRow(uuid, serverName, jsonData, dataVersion)));
 
-                return rowsAffected > 0;
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "保存玩家 " + uuid + " 的数据失败", e);
-                return false;
+            if (plugin.getConfig().getBoolean("settings.showSaveMessages", true)) {
+                plugin.getLogger().info("已保存玩家 " + uuid + " 在服务器 " + serverName + " 的数据");
             }
+            return saved;
+        }).exceptionally(ex -> {
+            logFailure("保存玩家 " + uuid + " 的数据失败", ex);
+            return false;
         });
     }
 
@@ -279,72 +301,481 @@ public class MySQL {
         CompletableFuture<Boolean> future = new CompletableFuture<>();
         Gson gson = new Gson();
 
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                String sql = "INSERT INTO `" + tablename + "` (uuid, serverName, data, dataVersion) VALUES (?, ?, ?, ?) " +
-                        "ON DUPLICATE KEY UPDATE data = ?, dataVersion = ?, updateDate = CURRENT_TIMESTAMP";
+        // 取得许可后才提交任务，数据库异常时立即失败，并发已满时排队，不在调度器中堆积任务
+        circuitBreaker.acquire().thenAccept(granted -> {
+            if (!granted) {
+                logFailure("异步保存玩家 " + uuid + " 的数据失败", new RejectedException());
+                future.complete(false);
+                return;
+            }
+
+            try {
+                new BukkitRunnable() {
+                    @Override
+                    public void run() {
+                        String sql = "INSERT INTO `" + tablename + "` (uuid, serverName, data, dataVersion) VALUES (?, ?, ?, ?) " +
+                                "ON DUPLICATE KEY UPDATE data = ?, dataVersion = ?, updateDate = CURRENT_TIMESTAMP";
+
+                        String jsonString = gson.toJson(data);
+                        try {
+                            int rowsAffected = runAcquired(connection -> {
+                                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                                    statement.setString(1, uuid);
+                                    statement.setString(2, serverName);
+                                    statement.setString(3, jsonString);
+                                    statement.setString(4, dataVersion);
+                                    statement.setString(5, jsonString);
+                                    statement.setString(6, dataVersion);
+                                    return statement.executeUpdate();
+                                }
+                            });
+                            // runAcquired 返回时已归还许可与连接
+                            writeCache(List.of(new StoredRow(uuid, serverName, jsonString, dataVersion)));
+
+                            if (plugin.getConfig().getBoolean("settings.showSaveMessages", true)) {
+                                plugin.getLogger().info("已异步保存玩家 " + uuid + " 在服务器 " + serverName + " 的数据");
+                            }
+
+                            future.complete(rowsAffected > 0);
+                        } catch (SQLException e) {
+                            logFailure("异步保存玩家 " + uuid + " 的数据失败", e);
+                            future.complete(false);
+                        }
+                    }
+                }.runTaskAsynchronously(plugin);
+            } catch (RuntimeException e) {
+                // 插件卸载后无法再提交任务
+                circuitBreaker.abandon();
+                logFailure("异步保存玩家 " + uuid + " 的数据失败", e);
+                future.complete(false);
+            }
+        });
 
-                try (Connection connection = dataSource.getConnection();
-                     PreparedStatement statement = connection.prepareStatement(sql)) {
+        return future;
+    }
+
+    /**
+     * 增量累加玩家的在线时间，直接在数据库中修改 meta 字段，不需要先读取整份数据
+     *
+     * @param uuid          玩家UUID
+     * @param activeSeconds 增加的活跃秒数
+     * @param afkSeconds    增加的挂机秒数
+     * @param dataVersion   数据版本（仅在新建记录时使用）
+     * @return 操作结果的Future
+     */
+    public CompletableFuture<Boolean> addOnlineTime(String uuid, long activeSeconds, long afkSeconds, String dataVersion) {
+        return supplyGuarded(connection -> {
+            String sql = "INSERT INTO `" + tablename + "` (uuid, serverName, data, dataVersion) VALUES (?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE data = JSON_SET(data, " +
+                    "'$.meta', COALESCE(JSON_EXTRACT(data, '$.meta'), JSON_OBJECT()), " +
+                    "'$.meta.onlineTimeInSeconds', COALESCE(JSON_EXTRACT(data, '$.meta.onlineTimeInSeconds'), 0) + ?, " +
+                    "'$.meta.afkTimeInSeconds', COALESCE(JSON_EXTRACT(data, '$.meta.afkTimeInSeconds'), 0) + ?)";
 
-                    String jsonString = gson.toJson(data);
-                    statement.setString(1, uuid);
-                    statement.setString(2, serverName);
-                    statement.setString(3, jsonString);
-                    statement.setString(4, dataVersion);
-                    statement.setString(5, jsonString);
-                    statement.setString(6, dataVersion);
+            JsonObject meta = new JsonObject();
+            meta.addProperty("onlineTimeInSeconds", activeSeconds);
+            meta.addProperty("afkTimeInSeconds", afkSeconds);
+            JsonObject initialData = new JsonObject();
+            initialData.add("meta", meta);
 
-                    // 其余代码不变
-                    int rowsAffected = statement.executeUpdate();
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
 
-                    if (plugin.getConfig().getBoolean("settings.showSaveMessages", true)) {
-                        plugin.getLogger().info("已异步保存玩家 " + uuid + " 在服务器 " + serverName + " 的数据");
-                    }
+                statement.setString(1, uuid);
+                statement.setString(2, serverName);
+                statement.setString(3, initialData.toString());
+                statement.setString(4, dataVersion);
+                statement.setLong(5, activeSeconds);
+                statement.setLong(6, afkSeconds);
 
-                    future.complete(rowsAffected > 0);
-                } catch (SQLException e) {
-                    plugin.getLogger().log(Level.SEVERE, "异步保存玩家 " + uuid + " 的数据失败", e);
-                    future.complete(false);
-                }
+                return statement.executeUpdate() > 0;
             }
-        }.runTaskAsynchronously(plugin);
-
-        return future;
+        }).thenApply(updated -> {
+            invalidateCache(List.of(new StoredRow(uuid, serverName, null, dataVersion)));
+            return updated;
+        }).exceptionally(ex -> {
+            logFailure("写入玩家 " + uuid + " 的在线时间检查点失败", ex);
+            return false;
+        });
     }
 
     /**
-     * 从数据库获取玩家数据
+     * 从数据库获取玩家数据，启用共享缓存时先查缓存，供查询与展示使用
+     * 缓存可能落后于数据库，合并后写回的读取请使用 {@link #loadPlayerData(String)}
      *
      * @param uuid 玩家UUID
      * @return 包含玩家数据的JSONObject，如果没有找到则返回null
      */
-    @SuppressWarnings("unused")
     public CompletableFuture<JsonObject> getPlayerData(String uuid) {
-        return CompletableFuture.supplyAsync(() -> {
-            String sql = "SELECT data FROM `" + tablename + "` WHERE uuid = ? AND serverName = ?";
+        return getPlayerData(uuid, serverName);
+    }
+
+    /**
+     * 直接从数据库读取玩家数据，不经过共享缓存
+     * 用于读取后合并写回的保存路径：缓存被部分修改（如在线时间检查点）后若未能清除会残留旧数据，
+     * 以此为基础合并会覆盖数据库中较新的数据
+     *
+     * @param uuid 玩家UUID
+     * @return 包含玩家数据的JSONObject，如果没有找到则返回null
+     */
+    public CompletableFuture<JsonObject> loadPlayerData(String uuid) {
+        return loadPlayerData(uuid, serverName);
+    }
+
+    /**
+     * 从数据库获取玩家在指定服务器的数据
+     * 读取失败或被熔断器拒绝时 Future 以异常结束，避免调用方把读取失败当作没有数据而覆盖已有记录
+     * 旧版本结构的数据在返回前升级到当前版本，下次保存时随之写回
+     *
+     * @param uuid       玩家UUID
+     * @param serverName 服务器名称
+     * @return 包含玩家数据的JSONObject，如果没有找到则返回null
+     */
+    public CompletableFuture<JsonObject> getPlayerData(String uuid, String serverName) {
+        RedisCache cache = plugin.getRedisCache();
+        if (cache == null) {
+            return loadPlayerData(uuid, serverName);
+        }
+
+        // 先查共享缓存，未命中再读数据库并填充缓存
+        return CompletableFuture.supplyAsync(() -> cache.get(uuid, serverName)).thenCompose(cached -> {
+            if (cached != null) {
+                JsonObject data = JsonParser.parseString(cached).getAsJsonObject();
+                // 没有记录结构版本的缓存（如导入时写入的原始数据）需要按 dataVersion 推断，改为读取数据库
+                if (SchemaRegistry.hasRecordedVersion(data)) {
+                    SchemaRegistry.upgrade(data, null);
+                    return CompletableFuture.completedFuture(data);
+                }
+            }
+            return loadPlayerData(uuid, serverName);
+        });
+    }
+
+    /**
+     * 从数据库读取玩家数据，启用共享缓存时读取成功后填充缓存
+     */
+    private CompletableFuture<JsonObject> loadPlayerData(String uuid, String serverName) {
+        CompletableFuture<StoredRow> future = supplyGuarded(connection -> {
+            String sql = "SELECT data, dataVersion FROM `" + tablename + "` WHERE uuid = ? AND serverName = ?";
 
-            try (Connection connection = dataSource.getConnection();
-                 PreparedStatement statement = connection.prepareStatement(sql)) {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
 
                 statement.setString(1, uuid);
                 statement.setString(2, serverName);
 
                 try (ResultSet resultSet = statement.executeQuery()) {
-                    if (resultSet.next()) {
-                        String jsonData = resultSet.getString("data");
-                        return JsonParser.parseString(jsonData).getAsJsonObject();
+                    return resultSet.next()
+                            ? new StoredRow(uuid, serverName, resultSet.getString("data"), resultSet.getString("dataVersion"))
+                            : null;
+                }
+            }
+        });
+        future.exceptionally(ex -> {
+            logFailure("获取玩家 " + uuid + " 数据失败", ex);
+            return null;
+        });
+        return future.thenApply(row -> {
+            if (row == null) {
+                return null;
+            }
+            JsonObject data = JsonParser.parseString(row.data()).getAsJsonObject();
+            // 缓存中保存升级后的数据，其中记录了结构版本，读取缓存时不需要 dataVersion
+            boolean upgraded = SchemaRegistry.upgrade(data, row.dataVersion());
+            // 与写入相同，归还许可后再填充共享缓存
+            fillCache(uuid, serverName, upgraded ? data.toString() : row.data());
+            return data;
+        });
+    }
+
+    /**
+     * 逐行读取表中所有服务器的数据，使用游标分批拉取，内存占用与表大小无关
+     * 在调用线程中同步执行，请勿在主线程调用；数据库熔断时在当前批次结束后抛出 {@link RejectedException}
+     *
+     * @param fetchSize 每次从数据库拉取的行数
+     * @param consumer  行处理器
+     * @return 读取的行数
+     * @throws Exception SQL异常或行处理器抛出的异常
+     */
+    public long streamAllData(int fetchSize, RowConsumer consumer) throws Exception {
+        String sql = "SELECT uuid, serverName, data, dataVersion FROM `" + tablename + "`";
+        long rows = 0;
+
+        if (!circuitBreaker.allowBackground()) {
+            throw new RejectedException();
+        }
+
+        // 游标使用独立连接，不占用并发许可：整个导出期间占着一个许可会挤占玩家保存，
+        // 升级数据时每批写回还要再申请许可。改为每拉取一批检查一次熔断状态，数据库故障时尽快停下
+        int batchSize = Math.max(1, fetchSize);
+        boolean consuming = false;
+        try (Connection connection = openStreamingConnection();
+             PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            statement.setFetchSize(batchSize);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    StoredRow row = new StoredRow(
+                            resultSet.getString("uuid"),
+                            resultSet.getString("serverName"),
+                            resultSet.getString("data"),
+                            resultSet.getString("dataVersion"));
+                    consuming = true;
+                    consumer.accept(row);
+                    consuming = false;
+                    if (++rows % batchSize == 0 && !circuitBreaker.allowBackground()) {
+                        throw new RejectedException();
                     }
                 }
+            }
+        } catch (SQLException e) {
+            // 行处理器中的数据库调用（如升级后的批量写回）已各自计入统计
+            if (!consuming && !(e instanceof RejectedException)) {
+                circuitBreaker.recordBackgroundFailure();
+            }
+            throw e;
+        }
+
+        return rows;
+    }
+
+    /**
+     * 打开导出专用的连接并开启服务端游标，连接池中的普通查询仍一次取回全部结果，不为每次查询额外往返
+     *
+     * @return 新连接，由调用方关闭
+     * @throws SQLException 连接失败
+     */
+    private Connection openStreamingConnection() throws SQLException {
+        return DriverManager.getConnection(streamingUrl, username, password);
+    }
+
+    /**
+     * 批量写入数据（存在则更新，不存在则插入），保留每行自带的服务器名称
+     * 在调用线程中同步执行，请勿在主线程调用
+     *
+     * @param rows 要写入的行
+     * @throws SQLException SQL异常
+     */
+    public void upsertBatch(List<StoredRow> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        String sql = "INSERT INTO `" + tablename + "` (uuid, serverName, data, dataVersion) VALUES (?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE data = VALUES(data), dataVersion = VALUES(dataVersion), updateDate = CURRENT_TIMESTAMP";
+
+        guarded(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                connection.setAutoCommit(false);
+                for (StoredRow row : rows) {
+                    statement.setString(1, row.uuid());
+                    statement.setString(2, row.serverName());
+                    statement.setString(3, row.data());
+                    statement.setString(4, row.dataVersion());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+                return null;
             } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "获取玩家 " + uuid + " 数据失败", e);
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
+        });
+        writeCache(rows);
+    }
 
-            return null;
+    /**
+     * 批量替换数据，仅当数据库中的数据仍与读取时一致才写入，期间被其他保存改动过的行保持不变
+     * 不修改 dataVersion 与 updateDate，在调用线程中同步执行，请勿在主线程调用
+     *
+     * @param rows     新数据
+     * @param expected 与 rows 一一对应的原数据
+     * @return 实际写入的行数
+     * @throws SQLException SQL异常
+     */
+    public int compareAndSetBatch(List<StoredRow> rows, List<String> expected) throws SQLException {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        String sql = "UPDATE `" + tablename + "` SET data = ?, updateDate = updateDate " +
+                "WHERE uuid = ? AND serverName = ? AND data = ?";
+
+        int updated = guarded(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int i = 0; i < rows.size(); i++) {
+                    StoredRow row = rows.get(i);
+                    statement.setString(1, row.data());
+                    statement.setString(2, row.uuid());
+                    statement.setString(3, row.serverName());
+                    statement.setString(4, expected.get(i));
+                    statement.addBatch();
+                }
+
+                int count = 0;
+                for (int result : statement.executeBatch()) {
+                    if (result > 0) {
+                        count += result;
+                    }
+                }
+                return count;
+            }
+        });
+        invalidateCache(rows);
+        return updated;
+    }
+
+    /**
+     * 获取当前服务器名称
+     *
+     * @return 服务器名称
+     */
+    public String getServerName() {
+        return serverName;
+    }
+
+    /**
+     * 获取数据库熔断器
+     *
+     * @return 熔断器
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * 保存成功后写入共享缓存，未启用时不做任何事
+     * 以下缓存操作都在归还数据库许可后调用，任何异常只记录，不影响已成功的数据库操作
+     */
+    private void writeCache(List<StoredRow> rows) {
+        RedisCache cache = plugin.getRedisCache();
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.write(rows);
+        } catch (RuntimeException e) {
+            plugin.getLogger().log(Level.WARNING, "写入共享缓存失败", e);
+        }
+    }
+
+    /**
+     * 数据库中的数据被部分修改后清除共享缓存，未启用时不做任何事
+     */
+    private void invalidateCache(List<StoredRow> rows) {
+        RedisCache cache = plugin.getRedisCache();
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.invalidate(rows);
+        } catch (RuntimeException e) {
+            plugin.getLogger().log(Level.WARNING, "清除共享缓存失败", e);
+        }
+    }
+
+    /**
+     * 读取数据库后填充共享缓存，未启用时不做任何事
+     */
+    private void fillCache(String uuid, String serverName, String data) {
+        RedisCache cache = plugin.getRedisCache();
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.fill(uuid, serverName, data);
+        } catch (RuntimeException e) {
+            plugin.getLogger().log(Level.WARNING, "填充共享缓存失败", e);
+        }
+    }
+
+    /**
+     * 经过熔断器同步执行数据库调用，并发已满时在调用线程中等待许可，请勿在主线程调用
+     *
+     * @param call 数据库调用
+     * @return 调用结果
+     * @throws SQLException SQL异常，被拒绝时抛出 {@link RejectedException}
+     */
+    private <T> T guarded(SqlCall<T> call) throws SQLException {
+        if (!circuitBreaker.acquireBlocking()) {
+            throw new RejectedException();
+        }
+        return runAcquired(call);
+    }
+
+    /**
+     * 在已取得许可的情况下执行数据库调用，结束后记录耗时与结果
+     */
+    private <T> T runAcquired(SqlCall<T> call) throws SQLException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try (Connection connection = dataSource.getConnection()) {
+            T result = call.call(connection);
+            success = true;
+            return result;
+        } finally {
+            circuitBreaker.release(System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * 经过熔断器异步执行数据库调用
+     * 取得许可后才提交到线程池，并发已满时在熔断器中排队，被拒绝时返回失败的Future，避免任务在线程池中堆积
+     *
+     * @param call 数据库调用
+     * @return 调用结果的Future
+     */
+    private <T> CompletableFuture<T> supplyGuarded(SqlCall<T> call) {
+        return circuitBreaker.acquire().thenApplyAsync(granted -> {
+            if (!granted) {
+                throw new CompletionException(new RejectedException());
+            }
+            try {
+                return runAcquired(call);
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
         });
     }
 
+    /**
+     * 记录失败，熔断器拒绝的请求只简单提示，不打印堆栈
+     */
+    private void logFailure(String message, Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof RejectedException) {
+            plugin.getLogger().warning(message + ": " + cause.getMessage());
+        } else {
+            plugin.getLogger().log(Level.SEVERE, message, cause);
+        }
+    }
+
+    /**
+     * 数据库调用
+     */
+    @FunctionalInterface
+    private interface SqlCall<T> {
+        T call(Connection connection) throws SQLException;
+    }
+
+    /**
+     * 熔断器打开或排队等待超时时拒绝请求
+     */
+    public static class RejectedException extends SQLTransientConnectionException {
+        public RejectedException() {
+            super("数据库熔断或等待超时，请求被拒绝");
+        }
+    }
+
+    /**
+     * 行处理器
+     */
+    @FunctionalInterface
+    public interface RowConsumer {
+        void accept(StoredRow row) throws Exception;
+    }
+
     /**
      * 关闭连接池
      */
@@ -0,0 +1,154 @@
+package com.miaomc.ssaver.utils;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.miaomc.ssaver.SSaver;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+/**
+ * 数据库不可用时的本地暂存
+ * 保存失败或被熔断器拒绝的数据按时间顺序写入 pending 目录，定期按顺序回放，回放成功后删除。
+ * 暂存的是尚未与数据库合并的增量（在线时间与统计），因此回放时不会覆盖期间写入的其他数据。
+ */
+public class PendingSaves {
+
+    // 回放间隔（tick）
+    private static final long REPLAY_PERIOD_TICKS = 20L * 30;
+
+    private final SSaver plugin;
+    private final File folder;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicBoolean replaying = new AtomicBoolean(false);
+    private BukkitTask replayTask;
+
+    public PendingSaves(SSaver plugin) {
+        this.plugin = plugin;
+        this.folder = new File(plugin.getDataFolder(), "pending");
+    }
+
+    /**
+     * 暂存一条待保存的数据
+     *
+     * @param entry 包含 uuid 字段的待保存数据
+     */
+    public void add(JsonObject entry) {
+        String uuid = entry.get("uuid").getAsString();
+        // 文件名以时间开头，按名称排序即为写入顺序
+        String name = String.format("%013d-%06d-%s", System.currentTimeMillis(), sequence.incrementAndGet() % 1_000_000, uuid);
+
+        try {
+            if (!folder.exists() && !folder.mkdirs()) {
+                throw new IOException("无法创建目录 " + folder.getPath());
+            }
+            // 先写临时文件再改名，避免崩溃时留下不完整的文件
+            File temp = new File(folder, name + ".tmp");
+            Files.writeString(temp.toPath(), entry.toString(), StandardCharsets.UTF_8);
+            Files.move(temp.toPath(), new File(folder, name + ".json").toPath(), StandardCopyOption.ATOMIC_MOVE);
+            plugin.getLogger().warning("数据库不可用，玩家 " + uuid + " 的数据已暂存到本地，恢复后自动写入");
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "暂存玩家 " + uuid + " 的数据失败，数据已丢失: " + entry, e);
+        }
+    }
+
+    /**
+     * 获取暂存的数据条数
+     *
+     * @return 暂存条数
+     */
+    public int size() {
+        String[] files = folder.list((dir, name) -> name.endsWith(".json"));
+        return files == null ? 0 : files.length;
+    }
+
+    /**
+     * 启动定期回放任务
+     *
+     * @param replayer 回放单条数据，成功返回true
+     */
+    public void start(Predicate<JsonObject> replayer) {
+        // 在主线程取得在线玩家后再到异步线程回放，回放线程不调用 Bukkit API
+        replayTask = Bukkit.getScheduler().runTaskTimer(plugin, () -> {
+            if (replaying.get()) {
+                return;
+            }
+            Set<UUID> online = new HashSet<>();
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                online.add(player.getUniqueId());
+            }
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> replayAll(replayer, online));
+        }, REPLAY_PERIOD_TICKS, REPLAY_PERIOD_TICKS);
+    }
+
+    /**
+     * 停止回放任务
+     */
+    public void stop() {
+        if (replayTask != null) {
+            replayTask.cancel();
+            replayTask = null;
+        }
+    }
+
+    /**
+     * 按写入顺序回放所有暂存数据，在异步线程中执行
+     *
+     * @param replayer 回放单条数据，成功返回true
+     * @param online   取快照时在线的玩家
+     */
+    private void replayAll(Predicate<JsonObject> replayer, Set<UUID> online) {
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(".json"));
+        if (files == null || files.length == 0 || !replaying.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            Arrays.sort(files);
+            int replayed = 0;
+            for (File file : files) {
+                JsonObject entry;
+                try {
+                    entry = JsonParser.parseString(Files.readString(file.toPath(), StandardCharsets.UTF_8)).getAsJsonObject();
+                } catch (Exception e) {
+                    plugin.getLogger().log(Level.SEVERE, "无法读取暂存文件 " + file.getName() + "，已跳过", e);
+                    continue;
+                }
+
+                // 玩家在线时跳过，等其退出保存后再回放；快照之后加入的玩家由回放排在其写入链上保证顺序
+                if (online.contains(UUID.fromString(entry.get("uuid").getAsString()))) {
+                    continue;
+                }
+
+                // 回放失败说明数据库仍不可用，停止本轮回放
+                if (!replayer.test(entry)) {
+                    break;
+                }
+                Files.deleteIfExists(file.toPath());
+                replayed++;
+            }
+
+            if (replayed > 0) {
+                plugin.getLogger().info("已将 " + replayed + " 条暂存数据写入数据库");
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "回放暂存数据时发生错误", e);
+        } finally {
+            replaying.set(false);
+        }
+    }
+}
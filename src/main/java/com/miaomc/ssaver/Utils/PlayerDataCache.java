@@ -0,0 +1,111 @@
+package com.miaomc.ssaver.utils;
+
+import com.google.gson.JsonObject;
+import com.miaomc.ssaver.SSaver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 离线玩家数据的短时缓存，供查询命令与 HTTP 接口使用
+ * 同一玩家并发的查询共用一次数据库读取，本服保存数据后立即失效。
+ * 每隔一个缓存时间清除一次过期数据，条数超过上限时再按过期时间从早到晚清除。
+ */
+public class PlayerDataCache {
+
+    private final SSaver plugin;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweepAt = new AtomicLong();
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+
+    private record Entry(CompletableFuture<JsonObject> data, long expiresAt) {
+    }
+
+    public PlayerDataCache(SSaver plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 获取玩家数据，缓存未命中时异步读取数据库
+     *
+     * @param uuid 玩家UUID
+     * @return 玩家数据的Future，没有数据时为null
+     */
+    public CompletableFuture<JsonObject> get(String uuid) {
+        long now = System.currentTimeMillis();
+        long ttlMillis = plugin.getConfig().getLong("settings.lookupCacheTtl", 60) * 1000L;
+        Entry entry = entries.compute(uuid, (key, existing) -> {
+            if (existing != null && existing.expiresAt() > now) {
+                return existing;
+            }
+            return new Entry(plugin.getMySQL().getPlayerData(key), now + ttlMillis);
+        });
+        sweep(now, ttlMillis);
+
+        // 读取失败的结果不缓存
+        entry.data().exceptionally(ex -> {
+            entries.remove(uuid, entry);
+            return null;
+        });
+        return entry.data();
+    }
+
+    /**
+     * 清除过期数据，条数超过上限时清除过期时间最早的数据，直到降到上限的九成
+     * 同一时间只有一个线程执行，其余调用直接返回
+     */
+    private void sweep(long now, long ttlMillis) {
+        int maxEntries = Math.max(1, plugin.getConfig().getInt("settings.lookupCacheMaxEntries", 10000));
+        if ((now < nextSweepAt.get() && entries.size() <= maxEntries) || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            nextSweepAt.set(now + Math.max(1000, ttlMillis));
+            entries.values().removeIf(entry -> entry.expiresAt() <= now);
+            if (entries.size() <= maxEntries) {
+                return;
+            }
+
+            List<Map.Entry<String, Entry>> oldest = new ArrayList<>(entries.entrySet());
+            oldest.sort(Comparator.comparingLong(entry -> entry.getValue().expiresAt()));
+            int excess = entries.size() - maxEntries * 9 / 10;
+            for (int i = 0; i < excess && i < oldest.size(); i++) {
+                entries.remove(oldest.get(i).getKey(), oldest.get(i).getValue());
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * 获取缓存的条数
+     *
+     * @return 条数
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 使玩家的缓存失效
+     *
+     * @param uuid 玩家UUID
+     */
+    public void invalidate(String uuid) {
+        entries.remove(uuid);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        entries.clear();
+    }
+}
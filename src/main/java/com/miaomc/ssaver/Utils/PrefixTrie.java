@@ -0,0 +1,97 @@
+package com.miaomc.ssaver.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 只读前缀树，用于命令补全
+ * 构建时对键排序，每个节点只记录其子树在有序数组中的区间，查询时沿前缀走到节点后直接截取区间，不需要遍历或过滤
+ */
+public class PrefixTrie {
+
+    private final String[] keys;
+    private final Node root;
+
+    private static final class Node {
+        char[] labels = new char[0];
+        Node[] children = new Node[0];
+        int from;
+        int to;
+    }
+
+    /**
+     * 构造前缀树，键统一转为大写
+     *
+     * @param keys 所有键
+     */
+    public PrefixTrie(Collection<String> keys) {
+        this.keys = keys.stream().map(String::toUpperCase).distinct().sorted().toArray(String[]::new);
+        this.root = build(0, this.keys.length, 0);
+    }
+
+    /**
+     * 递归构建节点，[from, to) 内的键在 depth 之前的前缀相同
+     */
+    private Node build(int from, int to, int depth) {
+        Node node = new Node();
+        node.from = from;
+        node.to = to;
+
+        // 跳过长度恰好为 depth 的键（即以此节点结尾的键，排序后位于区间开头）
+        int start = from;
+        while (start < to && keys[start].length() == depth) {
+            start++;
+        }
+
+        // 统计不同的下一个字符
+        int count = 0;
+        for (int i = start; i < to; ) {
+            char c = keys[i].charAt(depth);
+            int end = i;
+            while (end < to && keys[end].charAt(depth) == c) {
+                end++;
+            }
+            count++;
+            i = end;
+        }
+
+        node.labels = new char[count];
+        node.children = new Node[count];
+        int index = 0;
+        for (int i = start; i < to; ) {
+            char c = keys[i].charAt(depth);
+            int end = i;
+            while (end < to && keys[end].charAt(depth) == c) {
+                end++;
+            }
+            node.labels[index] = c;
+            node.children[index] = build(i, end, depth + 1);
+            index++;
+            i = end;
+        }
+
+        return node;
+    }
+
+    /**
+     * 获取以指定前缀开头的键（不区分大小写）
+     *
+     * @param prefix 前缀
+     * @param limit  最多返回的数量
+     * @return 按字母顺序排列的键
+     */
+    public List<String> complete(String prefix, int limit) {
+        Node node = root;
+        String upper = prefix.toUpperCase();
+        for (int i = 0; i < upper.length() && node != null; i++) {
+            int index = Arrays.binarySearch(node.labels, upper.charAt(i));
+            node = index >= 0 ? node.children[index] : null;
+        }
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(keys).subList(node.from, Math.min(node.to, node.from + limit));
+    }
+}
@@ -0,0 +1,272 @@
+package com.miaomc.ssaver.utils;
+
+import com.miaomc.ssaver.SSaver;
+import org.bukkit.configuration.file.FileConfiguration;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.params.SetParams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Redis 共享缓存
+ * 位于 MySQL 之前，所有子服与代理端读取同一份缓存。保存成功后直接写入缓存（写穿），
+ * 并通过发布/订阅通知使用相同服务器名称的其他实例清除本地缓存。
+ * 缓存只是加速手段，Redis 不可用时所有操作都退回数据库，不影响保存。
+ */
+public class RedisCache {
+
+    // Redis 异常时最多每隔多久输出一次警告
+    private static final long WARN_INTERVAL_MILLIS = 60_000;
+    // 订阅断开后的重连间隔
+    private static final long RESUBSCRIBE_DELAY_MILLIS = 5_000;
+
+    private final SSaver plugin;
+    private final JedisPool pool;
+    private final HostAndPort address;
+    private final JedisClientConfig subscribeConfig;
+    private final String keyPrefix;
+    private final String channel;
+    private final long ttlSeconds;
+    private final boolean gzip;
+    // 本实例的标识，用于忽略自己发出的失效通知
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final AtomicLong lastWarning = new AtomicLong();
+    private volatile boolean running;
+    private volatile JedisPubSub subscriber;
+    private Thread subscribeThread;
+
+    public RedisCache(SSaver plugin) {
+        this.plugin = plugin;
+        FileConfiguration config = plugin.getConfig();
+        this.keyPrefix = config.getString("cache.redis.keyPrefix", "ssaver:");
+        this.channel = config.getString("cache.redis.channel", "ssaver:invalidate");
+        this.ttlSeconds = Math.max(1, config.getLong("cache.redis.ttlSeconds", 300));
+        this.gzip = "gzip".equalsIgnoreCase(config.getString("cache.redis.serialization", "json"));
+
+        String password = config.getString("cache.redis.password", "");
+        int timeoutMillis = config.getInt("cache.redis.timeoutMillis", 2000);
+        DefaultJedisClientConfig.Builder clientConfig = DefaultJedisClientConfig.builder()
+                .connectionTimeoutMillis(timeoutMillis)
+                .database(config.getInt("cache.redis.database", 0))
+                .ssl(config.getBoolean("cache.redis.ssl", false))
+                .clientName("SSaver");
+        if (password != null && !password.isEmpty()) {
+            clientConfig.password(password);
+        }
+
+        this.address = new HostAndPort(config.getString("cache.redis.host", "localhost"), config.getInt("cache.redis.port", 6379));
+        // 订阅连接长时间没有消息是正常的，不设读取超时
+        this.subscribeConfig = clientConfig.socketTimeoutMillis(0).build();
+
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(config.getInt("cache.redis.poolSize", 8));
+        poolConfig.setMaxWait(Duration.ofMillis(timeoutMillis));
+        this.pool = new JedisPool(poolConfig, address, clientConfig.socketTimeoutMillis(timeoutMillis).build());
+    }
+
+    /**
+     * 启动失效通知的订阅线程
+     */
+    public void start() {
+        running = true;
+        subscribeThread = new Thread(this::subscribeLoop, "SSaver-Redis-Subscriber");
+        subscribeThread.setDaemon(true);
+        subscribeThread.start();
+    }
+
+    /**
+     * 停止订阅并关闭连接池
+     */
+    public void close() {
+        running = false;
+        JedisPubSub current = subscriber;
+        if (current != null && current.isSubscribed()) {
+            try {
+                current.unsubscribe();
+            } catch (Exception ignored) {
+                // 连接已断开
+            }
+        }
+        if (subscribeThread != null) {
+            subscribeThread.interrupt();
+        }
+        pool.close();
+    }
+
+    /**
+     * 读取缓存的玩家数据
+     *
+     * @param uuid       玩家UUID
+     * @param serverName 服务器名称
+     * @return 数据的JSON字符串，未命中或Redis不可用时返回null
+     */
+    public String get(String uuid, String serverName) {
+        try (Jedis jedis = pool.getResource()) {
+            byte[] value = jedis.get(key(uuid, serverName));
+            return value == null ? null : decode(value);
+        } catch (Exception e) {
+            warn("读取 Redis 缓存失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 读取数据库后填充缓存，缓存中已有数据时不覆盖，避免较旧的读取结果覆盖保存时写入的新数据
+     *
+     * @param uuid       玩家UUID
+     * @param serverName 服务器名称
+     * @param data       数据的JSON字符串
+     */
+    public void fill(String uuid, String serverName, String data) {
+        try (Jedis jedis = pool.getResource()) {
+            jedis.set(key(uuid, serverName), encode(data), SetParams.setParams().nx().ex(ttlSeconds));
+        } catch (Exception e) {
+            warn("写入 Redis 缓存失败", e);
+        }
+    }
+
+    /**
+     * 保存成功后写入缓存并通知其他实例
+     *
+     * @param rows 已写入数据库的行
+     */
+    public void write(Collection<StoredRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try (Jedis jedis = pool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (StoredRow row : rows) {
+                pipeline.setex(key(row.uuid(), row.serverName()), ttlSeconds, encode(row.data()));
+                pipeline.publish(channel, message(row.uuid(), row.serverName()));
+            }
+            pipeline.sync();
+        } catch (Exception e) {
+            warn("写入 Redis 缓存失败", e);
+            invalidate(rows);
+        }
+    }
+
+    /**
+     * 数据库中的数据被部分修改（如在线时间检查点）后删除缓存并通知其他实例
+     *
+     * @param rows 被修改的行，只使用 uuid 与 serverName
+     */
+    public void invalidate(Collection<StoredRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try (Jedis jedis = pool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (StoredRow row : rows) {
+                pipeline.del(key(row.uuid(), row.serverName()));
+                pipeline.publish(channel, message(row.uuid(), row.serverName()));
+            }
+            pipeline.sync();
+        } catch (Exception e) {
+            // 删除失败时缓存中可能残留旧数据，最长保留 ttlSeconds
+            warn("清除 Redis 缓存失败", e);
+        }
+    }
+
+    private void subscribeLoop() {
+        while (running) {
+            JedisPubSub pubSub = new JedisPubSub() {
+                @Override
+                public void onMessage(String channel, String message) {
+                    handleMessage(message);
+                }
+            };
+            subscriber = pubSub;
+
+            try (Jedis jedis = new Jedis(address, subscribeConfig)) {
+                jedis.subscribe(pubSub, channel);
+            } catch (Exception e) {
+                if (running) {
+                    warn("Redis 失效通知订阅断开，稍后重连", e);
+                }
+            }
+
+            if (running) {
+                try {
+                    Thread.sleep(RESUBSCRIBE_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 处理其他实例发出的失效通知，使用相同服务器名称的实例需要清除本地缓存
+     */
+    private void handleMessage(String message) {
+        String[] parts = message.split("\n", 3);
+        if (parts.length != 3 || parts[0].equals(instanceId)) {
+            return;
+        }
+        if (parts[1].equals(plugin.getMySQL().getServerName()) && plugin.getPlayerDataCache() != null) {
+            plugin.getPlayerDataCache().invalidate(parts[2]);
+        }
+    }
+
+    private String message(String uuid, String serverName) {
+        return instanceId + "\n" + serverName + "\n" + uuid;
+    }
+
+    private byte[] key(String uuid, String serverName) {
+        return (keyPrefix + serverName + ":" + uuid).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] encode(String data) {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        if (!gzip) {
+            return bytes;
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzipOutput = new GZIPOutputStream(output)) {
+            gzipOutput.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * 按内容判断是否为 gzip，修改 serialization 配置后旧缓存仍能读取
+     */
+    private static String decode(byte[] value) throws IOException {
+        if (value.length >= 2 && (value[0] & 0xff) == 0x1f && (value[1] & 0xff) == 0x8b) {
+            try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(value))) {
+                return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private void warn(String message, Exception e) {
+        long now = System.currentTimeMillis();
+        long last = lastWarning.get();
+        if (now - last >= WARN_INTERVAL_MILLIS && lastWarning.compareAndSet(last, now)) {
+            plugin.getLogger().warning(message + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.miaomc.ssaver.utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 数据结构版本登记
+ * 版本号保存在 meta.schemaVersion，没有该字段时按 dataVersion 列记录的 Minecraft 版本推断。Minecraft 版本更新时材质或实体改名，
+ * 旧数据中的键会失去对应关系，这里登记每个版本的改名规则，读取时按需升级，下次保存时随数据一起写回，
+ * 不需要在升级服务器时重写整张表。
+ * <p>
+ * 所有规则在类加载时编译为“从任意旧版本直达当前版本”的键名映射，升级一份数据只需遍历一次各分区的键。
+ */
+public final class SchemaRegistry {
+
+    /**
+     * 单个版本的改名规则
+     *
+     * @param version         升级后的版本号
+     * @param since           改名生效的 Minecraft 版本，从该版本起写入的数据已经是新名称
+     * @param materialRenames 材质改名（旧名 → 新名），作用于方块和物品统计
+     * @param entityRenames   实体改名（旧名 → 新名），作用于实体统计
+     */
+    record Upgrade(int version, String since, Map<String, String> materialRenames, Map<String, String> entityRenames) {
+    }
+
+    private static final List<Upgrade> UPGRADES = List.of(
+            // 1.20.3 / 1.20.5：草与鳞甲改名，Bukkit 实体枚举改为原版名称
+            // 1.20.3、1.20.4 写入的数据没有 GRASS、SCUTE，按 1.20.5 推断不会误改
+            new Upgrade(1, "1.20.5",
+                    Map.of(
+                            "GRASS", "SHORT_GRASS",
+                            "SCUTE", "TURTLE_SCUTE"
+                    ),
+                    Map.ofEntries(
+                            Map.entry("DROPPED_ITEM", "ITEM"),
+                            Map.entry("LEASH_HITCH", "LEASH_KNOT"),
+                            Map.entry("ENDER_SIGNAL", "EYE_OF_ENDER"),
+                            Map.entry("SPLASH_POTION", "POTION"),
+                            Map.entry("THROWN_EXP_BOTTLE", "EXPERIENCE_BOTTLE"),
+                            Map.entry("PRIMED_TNT", "TNT"),
+                            Map.entry("FIREWORK", "FIREWORK_ROCKET"),
+                            Map.entry("MINECART_COMMAND", "COMMAND_BLOCK_MINECART"),
+                            Map.entry("MINECART_CHEST", "CHEST_MINECART"),
+                            Map.entry("MINECART_FURNACE", "FURNACE_MINECART"),
+                            Map.entry("MINECART_TNT", "TNT_MINECART"),
+                            Map.entry("MINECART_HOPPER", "HOPPER_MINECART"),
+                            Map.entry("MINECART_MOB_SPAWNER", "SPAWNER_MINECART"),
+                            Map.entry("MUSHROOM_COW", "MOOSHROOM"),
+                            Map.entry("SNOWMAN", "SNOW_GOLEM"),
+                            Map.entry("ENDER_CRYSTAL", "END_CRYSTAL"),
+                            Map.entry("FISHING_HOOK", "FISHING_BOBBER"),
+                            Map.entry("LIGHTNING", "LIGHTNING_BOLT")
+                    ))
+    );
+
+    public static final int CURRENT_VERSION = UPGRADES.get(UPGRADES.size() - 1).version();
+
+    private static final String[] SECTIONS = {"blocks", "items", "entities"};
+    private static final String[][] SECTION_PREFIXES = {
+            {"MINE_", "USE_"},
+            {"USE_", "BREAK_", "CRAFT_"},
+            {"KILL_", "KILLED_BY_"}
+    };
+
+    // COMPILED[旧版本][分区] = 直达当前版本的键名映射
+    private static final List<List<Map<String, String>>> COMPILED = compile(UPGRADES);
+
+    private static final Pattern VERSION_NUMBER = Pattern.compile("^\\d+(\\.\\d+)*");
+
+    private SchemaRegistry() {
+    }
+
+    /**
+     * 将改名规则编译为从每个旧版本直达最新版本的键名映射
+     *
+     * @param upgrades 按版本号排列的改名规则
+     * @return 按旧版本索引、每个分区一份的键名映射
+     */
+    static List<List<Map<String, String>>> compile(List<Upgrade> upgrades) {
+        int latest = upgrades.get(upgrades.size() - 1).version();
+        List<List<Map<String, String>>> compiled = new ArrayList<>();
+        for (int from = 0; from < latest; from++) {
+            List<Map<String, String>> sections = new ArrayList<>();
+            for (int section = 0; section < SECTIONS.length; section++) {
+                Map<String, String> composed = new HashMap<>();
+                for (Upgrade upgrade : upgrades) {
+                    if (upgrade.version() > from) {
+                        compose(composed, sectionRenames(upgrade, section));
+                    }
+                }
+                sections.add(composed);
+            }
+            compiled.add(sections);
+        }
+        return compiled;
+    }
+
+    /**
+     * 将一个版本的材质/实体改名展开为某个分区的完整键名映射
+     */
+    private static Map<String, String> sectionRenames(Upgrade upgrade, int section) {
+        Map<String, String> names = SECTIONS[section].equals("entities") ? upgrade.entityRenames() : upgrade.materialRenames();
+        Map<String, String> renames = new HashMap<>();
+        for (String prefix : SECTION_PREFIXES[section]) {
+            names.forEach((oldName, newName) -> renames.put(prefix + oldName, prefix + newName));
+        }
+        return renames;
+    }
+
+    /**
+     * 在已有映射之后接上新的映射：a→b 且 b→c 时得到 a→c
+     */
+    private static void compose(Map<String, String> composed, Map<String, String> next) {
+        composed.replaceAll((from, to) -> next.getOrDefault(to, to));
+        next.forEach(composed::putIfAbsent);
+    }
+
+    /**
+     * 数据中是否记录了结构版本
+     *
+     * @param data 玩家数据
+     * @return 是否有 meta.schemaVersion
+     */
+    public static boolean hasRecordedVersion(JsonObject data) {
+        return data != null && data.has("meta") && data.get("meta").isJsonObject()
+                && data.getAsJsonObject("meta").has("schemaVersion");
+    }
+
+    /**
+     * 获取数据的结构版本
+     * 没有记录时按写入数据的 Minecraft 版本推断，该版本已经生效的改名不再执行：
+     * 例如 1.21.5 起 SPLASH_POTION 重新成为独立的实体，这之后写入的数据不能再改为 POTION
+     *
+     * @param data        玩家数据
+     * @param dataVersion 写入数据时的 Minecraft 版本（dataVersion 列），未知时为null
+     * @return 结构版本，无法推断时为 0
+     */
+    public static int getVersion(JsonObject data, String dataVersion) {
+        if (hasRecordedVersion(data)) {
+            return data.getAsJsonObject("meta").get("schemaVersion").getAsInt();
+        }
+        int version = 0;
+        for (Upgrade upgrade : UPGRADES) {
+            if (compareMinecraftVersions(dataVersion, upgrade.since()) >= 0) {
+                version = upgrade.version();
+            }
+        }
+        return version;
+    }
+
+    /**
+     * 将数据就地升级到当前版本，并记录结构版本，之后读取不再依赖 dataVersion 推断
+     * 改名后若新键已存在，保留两者中较大的值：统计都是累计值，游戏本身升级存档时已将旧值迁移到新键
+     *
+     * @param data        玩家数据，可以为null
+     * @param dataVersion 写入数据时的 Minecraft 版本（dataVersion 列），未知时为null
+     * @return 数据是否有变化
+     */
+    public static boolean upgrade(JsonObject data, String dataVersion) {
+        if (data == null) {
+            return false;
+        }
+        int version = getVersion(data, dataVersion);
+        if (version >= CURRENT_VERSION && hasRecordedVersion(data)) {
+            return false;
+        }
+
+        if (version < CURRENT_VERSION) {
+            rename(data, COMPILED.get(Math.max(0, version)));
+        }
+        JsonObject meta = data.has("meta") && data.get("meta").isJsonObject() ? data.getAsJsonObject("meta") : new JsonObject();
+        meta.addProperty("schemaVersion", CURRENT_VERSION);
+        data.add("meta", meta);
+        return true;
+    }
+
+    /**
+     * 按编译好的键名映射就地改名各分区的键
+     *
+     * @param data    玩家数据
+     * @param renames 每个分区一份的键名映射，见 {@link #compile(List)}
+     */
+    static void rename(JsonObject data, List<Map<String, String>> renames) {
+        for (int section = 0; section < SECTIONS.length; section++) {
+            JsonElement element = data.get(SECTIONS[section]);
+            if (element != null && element.isJsonObject()) {
+                renameKeys(element.getAsJsonObject(), renames.get(section));
+            }
+        }
+    }
+
+    /**
+     * 按数字逐段比较 Minecraft 版本号，如 1.20.5 早于 1.21、1.21 等于 1.21.0，无法解析的版本视为最早
+     *
+     * @return 负数、零或正数，分别表示 a 早于、等于或晚于 b
+     */
+    static int compareMinecraftVersions(String a, String b) {
+        int[] left = parseVersion(a);
+        int[] right = parseVersion(b);
+        if (left == null || right == null) {
+            return left == null ? (right == null ? 0 : -1) : 1;
+        }
+        for (int i = 0; i < Math.max(left.length, right.length); i++) {
+            int compared = Integer.compare(i < left.length ? left[i] : 0, i < right.length ? right[i] : 0);
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return 0;
+    }
+
+    private static int[] parseVersion(String version) {
+        if (version == null) {
+            return null;
+        }
+        Matcher matcher = VERSION_NUMBER.matcher(version.trim());
+        if (!matcher.find()) {
+            return null;
+        }
+        String[] parts = matcher.group().split("\\.");
+        int[] numbers = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                numbers[i] = Integer.parseInt(parts[i]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return numbers;
+    }
+
+    private static void renameKeys(JsonObject section, Map<String, String> renames) {
+        if (renames.isEmpty()) {
+            return;
+        }
+
+        for (String key : new ArrayList<>(section.keySet())) {
+            String target = renames.get(key);
+            if (target == null) {
+                continue;
+            }
+            JsonElement value = section.remove(key);
+            if (section.has(target)) {
+                section.addProperty(target, Math.max(section.get(target).getAsLong(), value.getAsLong()));
+            } else {
+                section.add(target, value);
+            }
+        }
+    }
+}
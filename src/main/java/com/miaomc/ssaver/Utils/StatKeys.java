@@ -0,0 +1,156 @@
+package com.miaomc.ssaver.utils;
+
+import org.bukkit.Material;
+import org.bukkit.Statistic;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 统计键定义
+ * 保存的数据按 general/blocks/entities/items 分区，键名形如 MINE_STONE、KILL_ZOMBIE，此处在类加载时预先生成全部键
+ */
+public final class StatKeys {
+
+    // 缓存常用地统计类型，提高性能
+    public static final Statistic[] UNTYPED_STATISTICS = Arrays.stream(Statistic.values())
+            .filter(stat -> stat.getType() == Statistic.Type.UNTYPED)
+            .toArray(Statistic[]::new);
+    public static final Statistic[] BLOCK_STATISTICS = {
+            Statistic.MINE_BLOCK,
+            Statistic.USE_ITEM
+    };
+    public static final Statistic[] ITEM_STATISTICS = {
+            Statistic.USE_ITEM,
+            Statistic.BREAK_ITEM,
+            Statistic.CRAFT_ITEM
+    };
+    public static final Statistic[] ENTITY_STATISTICS = {
+            Statistic.KILL_ENTITY,
+            Statistic.ENTITY_KILLED_BY
+    };
+
+    // 有效的方块/物品材质（排除旧版材质）
+    public static final Material[] VALID_BLOCK_MATERIALS = Arrays.stream(Material.values())
+            .filter(material -> !material.isLegacy() && material.isBlock())
+            .toArray(Material[]::new);
+    public static final Material[] VALID_ITEM_MATERIALS = Arrays.stream(Material.values())
+            .filter(material -> !material.isLegacy() && material.isItem())
+            .toArray(Material[]::new);
+
+    public static final String[] SECTIONS = {"general", "blocks", "entities", "items"};
+
+    private static final Map<String, StatKey> KEYS = new HashMap<>();
+    private static final PrefixTrie TRIE;
+
+    /**
+     * 单个统计键
+     *
+     * @param section   所在分区
+     * @param statistic 对应的统计类型，派生统计（如 TOTAL_BLOCKS_MINED）为null
+     * @param qualifier 方块/物品材质或实体类型，无类型统计为null
+     */
+    public record StatKey(String section, Statistic statistic, Object qualifier) {
+
+        /**
+         * 从在线玩家读取当前值，须在主线程调用
+         *
+         * @param player 玩家
+         * @return 当前值，派生统计返回null
+         */
+        public Integer read(Player player) {
+            if (statistic == null) {
+                return null;
+            }
+            if (qualifier instanceof Material material) {
+                return player.getStatistic(statistic, material);
+            }
+            if (qualifier instanceof EntityType entityType) {
+                return player.getStatistic(statistic, entityType);
+            }
+            return player.getStatistic(statistic);
+        }
+    }
+
+    static {
+        for (Statistic stat : UNTYPED_STATISTICS) {
+            KEYS.put(stat.name(), new StatKey("general", stat, null));
+        }
+        KEYS.put("TOTAL_BLOCKS_MINED", new StatKey("general", null, null));
+        KEYS.put("TOTAL_BLOCKS_PLACED", new StatKey("general", null, null));
+
+        for (Material material : VALID_BLOCK_MATERIALS) {
+            for (Statistic stat : BLOCK_STATISTICS) {
+                KEYS.put(blockKey(stat, material), new StatKey("blocks", stat, material));
+            }
+        }
+        for (EntityType entityType : EntityType.values()) {
+            for (Statistic stat : ENTITY_STATISTICS) {
+                KEYS.put(entityKey(stat, entityType), new StatKey("entities", stat, entityType));
+            }
+        }
+        // 方块和物品的 USE_ 键同名且数值相同，保留方块分区的定义
+        for (Material material : VALID_ITEM_MATERIALS) {
+            for (Statistic stat : ITEM_STATISTICS) {
+                KEYS.putIfAbsent(itemKey(stat, material), new StatKey("items", stat, material));
+            }
+        }
+
+        TRIE = new PrefixTrie(KEYS.keySet());
+    }
+
+    private StatKeys() {
+    }
+
+    /**
+     * 方块统计的键名
+     */
+    public static String blockKey(Statistic stat, Material material) {
+        return stat == Statistic.MINE_BLOCK ?
+                "MINE_" + material.name() :
+                "USE_" + material.name();  // 使用 USE 而不是 PLACE
+    }
+
+    /**
+     * 实体统计的键名
+     */
+    public static String entityKey(Statistic stat, EntityType entityType) {
+        return (stat == Statistic.KILL_ENTITY ? "KILL_" : "KILLED_BY_") + entityType.name();
+    }
+
+    /**
+     * 物品统计的键名
+     */
+    public static String itemKey(Statistic stat, Material material) {
+        String prefix;
+        if (stat == Statistic.USE_ITEM) prefix = "USE_";
+        else if (stat == Statistic.BREAK_ITEM) prefix = "BREAK_";
+        else prefix = "CRAFT_";
+        return prefix + material.name();
+    }
+
+    /**
+     * 查找统计键（不区分大小写）
+     *
+     * @param key 键名
+     * @return 统计键，不存在时返回null
+     */
+    public static StatKey get(String key) {
+        return KEYS.get(key.toUpperCase());
+    }
+
+    /**
+     * 补全统计键
+     *
+     * @param prefix 已输入的前缀
+     * @param limit  最多返回的数量
+     * @return 匹配的键
+     */
+    public static List<String> complete(String prefix, int limit) {
+        return TRIE.complete(prefix, limit);
+    }
+}
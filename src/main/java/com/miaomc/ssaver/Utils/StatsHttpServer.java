@@ -0,0 +1,455 @@
+package com.miaomc.ssaver.utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.miaomc.ssaver.SSaver;
+import com.miaomc.ssaver.listener.LiveStatistics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 玩家统计的 HTTP 接口
+ * GET /player/{uuid} 返回玩家的统计数据：
+ * 在线玩家取自内存快照，主线程每 tick 轮流采集少量玩家，序列化与压缩在后台线程完成，
+ * 开启实时统计时只在首次完整读取，之后合并计数器记录的变化；
+ * 离线玩家经 {@link PlayerDataCache} 读取，编码结果随缓存一同失效。
+ * 响应预先压缩为 gzip 并附带 ETag，重复轮询只需比对 ETag 或直接写出已压缩的字节；
+ * gzip 与未压缩的响应字节不同，ETag 按编码区分。
+ */
+public class StatsHttpServer implements Listener {
+
+    private static final String PATH_PREFIX = "/player/";
+
+    private final SSaver plugin;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    // 期望的 Authorization 请求头，为空时不校验
+    private final byte[] authorization;
+    private final long refreshMillis;
+    private final int playersPerTick;
+    private final long offlineTtlMillis;
+    private final int offlineMaxEntries;
+
+    // 在线玩家的快照
+    private final ConcurrentHashMap<UUID, Response> snapshots = new ConcurrentHashMap<>();
+    // 每名在线玩家最近一次采集的标记，编码完成时标记未变才写入快照，玩家退出时移除
+    private final ConcurrentHashMap<UUID, Object> collections = new ConcurrentHashMap<>();
+    // 离线玩家的已编码响应，source 与 PlayerDataCache 当前返回的 Future 相同时才有效
+    private final ConcurrentHashMap<UUID, OfflineResponse> offlineResponses = new ConcurrentHashMap<>();
+
+    // 以下字段只在主线程访问
+    private final ArrayDeque<UUID> queue = new ArrayDeque<>();
+    // 实时统计模式下每名玩家的完整统计，之后的采集只合并变化
+    private final HashMap<UUID, JsonObject> liveBases = new HashMap<>();
+    private long cycleStartedAt;
+    private BukkitTask collectTask;
+
+    /**
+     * 已编码的响应
+     *
+     * @param gzip      gzip 压缩后的 JSON
+     * @param tag       未压缩 JSON 的校验值与长度，ETag 由它加上编码生成
+     * @param createdAt 生成时间
+     */
+    private record Response(byte[] gzip, String tag, long createdAt) {
+
+        /**
+         * 获取指定编码的 ETag
+         *
+         * @param gzip 是否为 gzip 压缩的响应
+         * @return 带引号的 ETag
+         */
+        String etag(boolean gzip) {
+            return "\"" + tag + (gzip ? "-gzip" : "") + "\"";
+        }
+    }
+
+    private record OfflineResponse(CompletableFuture<JsonObject> source, Response response) {
+    }
+
+    public StatsHttpServer(SSaver plugin) throws IOException {
+        this.plugin = plugin;
+        FileConfiguration config = plugin.getConfig();
+        String token = config.getString("http.token", "");
+        this.authorization = token.isEmpty() ? null : ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+        this.refreshMillis = Math.max(1, config.getLong("http.refreshSeconds", 30)) * 1000L;
+        this.playersPerTick = Math.max(1, config.getInt("http.playersPerTick", 2));
+        this.offlineTtlMillis = config.getLong("settings.lookupCacheTtl", 60) * 1000L;
+        this.offlineMaxEntries = Math.max(1, config.getInt("settings.lookupCacheMaxEntries", 10000));
+
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(
+                config.getString("http.host", "127.0.0.1"), config.getInt("http.port", 8765)), 0);
+        server.setExecutor(executor);
+        server.createContext(PATH_PREFIX, this::handle);
+    }
+
+    /**
+     * 启动 HTTP 服务与快照采集任务
+     */
+    public void start() {
+        server.start();
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        collectTask = Bukkit.getScheduler().runTaskTimer(plugin, this::collectTick, 1L, 1L);
+        plugin.getLogger().info("HTTP 接口已启动: " + server.getAddress());
+    }
+
+    /**
+     * 获取实际监听的端口，配置为 0 时由系统分配
+     *
+     * @return 端口
+     */
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * 停止 HTTP 服务与采集任务
+     */
+    public void stop() {
+        if (collectTask != null) {
+            collectTask.cancel();
+            collectTask = null;
+        }
+        HandlerList.unregisterAll(this);
+        server.stop(0);
+        executor.shutdownNow();
+        snapshots.clear();
+        collections.clear();
+        liveBases.clear();
+        offlineResponses.clear();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        // 新加入的玩家优先采集
+        queue.addFirst(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        // 之后的请求走离线路径，退出保存完成后 PlayerDataCache 失效，届时自动读到新数据
+        // 先移除标记，仍在编码的快照不会再写入
+        UUID uuid = event.getPlayer().getUniqueId();
+        collections.remove(uuid);
+        snapshots.remove(uuid);
+        liveBases.remove(uuid);
+    }
+
+    /**
+     * 每 tick 采集少量在线玩家的统计，一轮采集完且距上一轮开始已过刷新间隔后开始下一轮
+     */
+    private void collectTick() {
+        long now = System.currentTimeMillis();
+        if (queue.isEmpty()) {
+            if (now - cycleStartedAt < refreshMillis) {
+                return;
+            }
+            cycleStartedAt = now;
+            Bukkit.getOnlinePlayers().forEach(player -> queue.add(player.getUniqueId()));
+            snapshots.keySet().removeIf(uuid -> Bukkit.getPlayer(uuid) == null);
+            collections.keySet().removeIf(uuid -> Bukkit.getPlayer(uuid) == null);
+            liveBases.keySet().removeIf(uuid -> Bukkit.getPlayer(uuid) == null);
+            offlineResponses.values().removeIf(entry -> now - entry.response().createdAt() > offlineTtlMillis);
+        }
+
+        for (int i = 0; i < playersPerTick && !queue.isEmpty(); i++) {
+            Player player = Bukkit.getPlayer(queue.poll());
+            if (player == null) {
+                continue;
+            }
+
+            UUID uuid = player.getUniqueId();
+            JsonObject body = snapshot(player);
+            body.addProperty("uuid", uuid.toString());
+            body.addProperty("playerName", player.getName());
+            body.addProperty("online", true);
+            body.addProperty("snapshotAt", now);
+
+            Object collection = new Object();
+            collections.put(uuid, collection);
+            executor.execute(() -> {
+                Response response = encode(body);
+                // 编码期间玩家可能已经退出或有了更新的采集，此时丢弃
+                collections.computeIfPresent(uuid, (key, current) -> {
+                    if (current == collection) {
+                        snapshots.put(uuid, response);
+                    }
+                    return current;
+                });
+            });
+        }
+    }
+
+    /**
+     * 读取玩家当前的统计，在主线程调用
+     * 开启实时统计时只在首次完整读取，之后合并计数器记录的变化并重新读取无类型统计
+     *
+     * @param player 玩家
+     * @return 统计数据，可交给后台线程使用
+     */
+    private JsonObject snapshot(Player player) {
+        UUID uuid = player.getUniqueId();
+        LiveStatistics liveStatistics = plugin.getLiveStatistics();
+        JsonObject base = liveBases.get(uuid);
+        JsonObject changes = base == null ? null : liveStatistics.collectSnapshotChanges(uuid);
+
+        if (changes == null) {
+            JsonObject statistics = plugin.getSavePlayerData().snapshotStatistics(player);
+            if (!liveStatistics.resetSnapshotChanges(uuid)) {
+                liveBases.remove(uuid);
+                return statistics;
+            }
+            liveBases.put(uuid, statistics);
+            return statistics.deepCopy();
+        }
+
+        for (String section : new String[]{"blocks", "entities", "items"}) {
+            JsonObject target = base.getAsJsonObject(section);
+            for (Map.Entry<String, JsonElement> entry : changes.getAsJsonObject(section).entrySet()) {
+                target.add(entry.getKey(), entry.getValue());
+            }
+        }
+
+        // 与完整读取相同，总数为各方块的挖掘/放置数之和
+        long totalMined = 0;
+        long totalPlaced = 0;
+        for (Map.Entry<String, JsonElement> entry : base.getAsJsonObject("blocks").entrySet()) {
+            if (entry.getKey().startsWith("MINE_")) {
+                totalMined += entry.getValue().getAsLong();
+            } else {
+                totalPlaced += entry.getValue().getAsLong();
+            }
+        }
+        JsonObject general = plugin.getSavePlayerData().snapshotGeneralStatistics(player);
+        general.addProperty("TOTAL_BLOCKS_MINED", totalMined);
+        general.addProperty("TOTAL_BLOCKS_PLACED", totalPlaced);
+        base.add("general", general);
+
+        // 编码在后台线程进行，之后的采集会继续修改 base
+        return base.deepCopy();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                sendStatus(exchange, 405);
+                return;
+            }
+            if (authorization != null && !isAuthorized(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                sendStatus(exchange, 401);
+                return;
+            }
+
+            UUID uuid;
+            try {
+                uuid = UUID.fromString(exchange.getRequestURI().getPath().substring(PATH_PREFIX.length()));
+            } catch (IllegalArgumentException e) {
+                sendStatus(exchange, 400);
+                return;
+            }
+
+            Response response = snapshots.get(uuid);
+            if (response == null) {
+                try {
+                    response = getOfflineResponse(uuid);
+                } catch (CompletionException e) {
+                    sendStatus(exchange, 503);
+                    return;
+                }
+            }
+            if (response == null) {
+                sendStatus(exchange, 404);
+                return;
+            }
+
+            boolean gzip = acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            String etag = response.etag(gzip);
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+            if (matchesEtag(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            byte[] body = response.gzip();
+            if (gzip) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            } else {
+                body = decompress(body);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+
+            if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        } catch (RuntimeException e) {
+            plugin.getLogger().log(Level.WARNING, "处理 HTTP 请求失败", e);
+        }
+    }
+
+    /**
+     * 以固定时间比较 Authorization 请求头，不因前缀相同的字节数泄露 token
+     */
+    private boolean isAuthorized(String header) {
+        byte[] actual = header == null ? new byte[0] : header.getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(authorization, actual);
+    }
+
+    /**
+     * 客户端是否接受 gzip，q=0 表示明确拒绝
+     *
+     * @param acceptEncoding Accept-Encoding 请求头
+     * @return 是否接受
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean rejected = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    try {
+                        rejected = Double.parseDouble(parameter.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        rejected = true;
+                    }
+                }
+            }
+            if (!rejected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * If-None-Match 是否匹配，可以是多个 ETag 或 *，按弱比较忽略 W/ 前缀
+     *
+     * @param ifNoneMatch If-None-Match 请求头
+     * @param etag        当前响应的 ETag
+     * @return 是否匹配
+     */
+    static boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 读取离线玩家的响应，PlayerDataCache 中的数据未变时直接复用上次编码的结果
+     * 在虚拟线程中执行，可以阻塞等待数据库
+     *
+     * @param uuid 玩家UUID
+     * @return 响应，没有数据时返回null
+     */
+    private Response getOfflineResponse(UUID uuid) {
+        CompletableFuture<JsonObject> source = plugin.getPlayerDataCache().get(uuid.toString());
+        OfflineResponse cached = offlineResponses.get(uuid);
+        if (cached != null && cached.source() == source) {
+            return cached.response();
+        }
+
+        JsonObject data = source.join();
+        if (data == null) {
+            return null;
+        }
+
+        JsonObject body = new JsonObject();
+        body.addProperty("uuid", uuid.toString());
+        body.addProperty("online", false);
+        // 缓存中的对象可能被其他查询共用，只复制引用不做修改
+        for (Map.Entry<String, JsonElement> entry : data.entrySet()) {
+            body.add(entry.getKey(), entry.getValue());
+        }
+
+        Response response = encode(body);
+        // 大量不同玩家的查询不会让编码结果无限增长，过期的结果每轮采集时清除
+        if (offlineResponses.size() < offlineMaxEntries) {
+            offlineResponses.put(uuid, new OfflineResponse(source, response));
+        }
+        return response;
+    }
+
+    private static Response encode(JsonObject body) {
+        byte[] json = body.toString().getBytes(StandardCharsets.UTF_8);
+
+        CRC32 crc = new CRC32();
+        crc.update(json);
+        String tag = String.format("%08x-%x", crc.getValue(), json.length);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Response(output.toByteArray(), tag, System.currentTimeMillis());
+    }
+
+    private static byte[] decompress(byte[] gzip) throws IOException {
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return input.readAllBytes();
+        }
+    }
+
+    private static void sendStatus(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+}
@@ -0,0 +1,12 @@
+package com.miaomc.ssaver.utils;
+
+/**
+ * 数据表中的一行记录
+ *
+ * @param uuid        玩家UUID
+ * @param serverName  服务器名称
+ * @param data        JSON字符串数据
+ * @param dataVersion 数据版本
+ */
+public record StoredRow(String uuid, String serverName, String data, String dataVersion) {
+}
@@ -0,0 +1,297 @@
+package com.miaomc.ssaver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 进程内的简易 Redis，只实现插件用到的命令（GET、SET NX EX、SETEX、DEL、PUBLISH、SUBSCRIBE 等），
+ * 使用 RESP2 协议，不处理过期时间
+ */
+public final class FakeRedis implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final Map<String, byte[]> store = new ConcurrentHashMap<>();
+    private final Map<String, List<Client>> subscribers = new ConcurrentHashMap<>();
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final Thread acceptThread;
+    private volatile boolean running = true;
+    private volatile long delayMillis;
+
+    private static final class Client {
+        final Socket socket;
+        final OutputStream output;
+
+        Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.output = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        synchronized void send(byte[] reply) throws IOException {
+            output.write(reply);
+            output.flush();
+        }
+    }
+
+    public FakeRedis() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptThread = new Thread(this::acceptLoop, "FakeRedis-Accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * 直接读取保存的原始字节
+     */
+    public byte[] getRaw(String key) {
+        return store.get(key);
+    }
+
+    /**
+     * 每条命令回复前等待的时间，模拟 Redis 变慢
+     */
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * 当前订阅指定频道的连接数
+     */
+    public int getSubscriberCount(String channel) {
+        List<Client> list = subscribers.get(channel);
+        return list == null ? 0 : list.size();
+    }
+
+    /**
+     * 关闭监听与所有连接，模拟 Redis 不可用
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        // 监听线程阻塞在 accept 时，端口要等它退出后才真正关闭，之前仍可能接受新连接
+        try {
+            acceptThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Client client : clients) {
+            client.socket.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Client client = new Client(socket);
+                clients.add(client);
+                Thread thread = new Thread(() -> serve(client), "FakeRedis-Client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Client client) {
+        try (Socket ignored = client.socket;
+             InputStream input = new BufferedInputStream(client.socket.getInputStream())) {
+            List<byte[]> command;
+            while ((command = readCommand(input)) != null) {
+                if (delayMillis > 0) {
+                    Thread.sleep(delayMillis);
+                }
+                byte[] reply = execute(client, command);
+                if (reply != null) {
+                    client.send(reply);
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // 连接断开
+        } finally {
+            clients.remove(client);
+            subscribers.values().forEach(list -> list.remove(client));
+        }
+    }
+
+    private byte[] execute(Client client, List<byte[]> command) throws IOException {
+        String name = text(command.get(0)).toUpperCase(Locale.ROOT);
+        switch (name) {
+            case "PING":
+                return simple("PONG");
+            case "AUTH":
+            case "SELECT":
+            case "CLIENT":
+                return simple("OK");
+            case "QUIT":
+                client.send(simple("OK"));
+                client.socket.close();
+                return null;
+            case "GET":
+                return bulk(store.get(text(command.get(1))));
+            case "SET": {
+                String key = text(command.get(1));
+                boolean nx = false;
+                for (int i = 3; i < command.size(); i++) {
+                    if (text(command.get(i)).equalsIgnoreCase("NX")) {
+                        nx = true;
+                    }
+                }
+                if (nx) {
+                    return store.putIfAbsent(key, command.get(2)) == null ? simple("OK") : bulk(null);
+                }
+                store.put(key, command.get(2));
+                return simple("OK");
+            }
+            case "SETEX":
+                store.put(text(command.get(1)), command.get(3));
+                return simple("OK");
+            case "DEL": {
+                long removed = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    if (store.remove(text(command.get(i))) != null) {
+                        removed++;
+                    }
+                }
+                return integer(removed);
+            }
+            case "PUBLISH": {
+                String channel = text(command.get(1));
+                List<Client> list = subscribers.getOrDefault(channel, List.of());
+                byte[] message = array(bulk("message".getBytes(StandardCharsets.UTF_8)),
+                        bulk(command.get(1)), bulk(command.get(2)));
+                for (Client subscriber : list) {
+                    try {
+                        subscriber.send(message);
+                    } catch (IOException ignored) {
+                        // 订阅方已断开
+                    }
+                }
+                return integer(list.size());
+            }
+            case "SUBSCRIBE":
+                for (int i = 1; i < command.size(); i++) {
+                    subscribers.computeIfAbsent(text(command.get(i)), key -> new CopyOnWriteArrayList<>()).add(client);
+                    client.send(array(bulk("subscribe".getBytes(StandardCharsets.UTF_8)),
+                            bulk(command.get(i)), integer(i)));
+                }
+                return null;
+            case "UNSUBSCRIBE": {
+                List<String> channels = new ArrayList<>();
+                for (Map.Entry<String, List<Client>> entry : subscribers.entrySet()) {
+                    if (entry.getValue().remove(client)) {
+                        channels.add(entry.getKey());
+                    }
+                }
+                for (String channel : channels) {
+                    client.send(array(bulk("unsubscribe".getBytes(StandardCharsets.UTF_8)),
+                            bulk(channel.getBytes(StandardCharsets.ISO_8859_1)), integer(0)));
+                }
+                return null;
+            }
+            default:
+                return ("-ERR unknown command '" + name + "'\r\n").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 读取一条命令，客户端只会发送由批量字符串组成的数组
+     */
+    private static List<byte[]> readCommand(InputStream input) throws IOException {
+        String header = readLine(input);
+        if (header == null) {
+            return null;
+        }
+        if (header.charAt(0) != '*') {
+            throw new IOException("不支持的请求: " + header);
+        }
+        int count = Integer.parseInt(header.substring(1));
+        List<byte[]> command = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String length = readLine(input);
+            if (length == null || length.charAt(0) != '$') {
+                throw new IOException("不支持的请求: " + length);
+            }
+            byte[] value = input.readNBytes(Integer.parseInt(length.substring(1)));
+            input.readNBytes(2);
+            command.add(value);
+        }
+        return command;
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = input.read()) != -1) {
+            if (b == '\r') {
+                input.read();
+                return line.toString();
+            }
+            line.append((char) b);
+        }
+        return null;
+    }
+
+    /**
+     * 键按 ISO-8859-1 转为字符串，任意字节都能无损往返
+     */
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] simple(String value) {
+        return ("+" + value + "\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] integer(long value) {
+        return (":" + value + "\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bulk(byte[] value) {
+        if (value == null) {
+            return "$-1\r\n".getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] header = ("$" + value.length + "\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] reply = new byte[header.length + value.length + 2];
+        System.arraycopy(header, 0, reply, 0, header.length);
+        System.arraycopy(value, 0, reply, header.length, value.length);
+        reply[reply.length - 2] = '\r';
+        reply[reply.length - 1] = '\n';
+        return reply;
+    }
+
+    private static byte[] array(byte[]... elements) {
+        byte[] header = ("*" + elements.length + "\r\n").getBytes(StandardCharsets.UTF_8);
+        int length = header.length;
+        for (byte[] element : elements) {
+            length += element.length;
+        }
+        byte[] reply = new byte[length];
+        System.arraycopy(header, 0, reply, 0, header.length);
+        int offset = header.length;
+        for (byte[] element : elements) {
+            System.arraycopy(element, 0, reply, offset, element.length);
+            offset += element.length;
+        }
+        return reply;
+    }
+}
@@ -0,0 +1,99 @@
+package com.miaomc.ssaver;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * 为 H2 注册插件用到的 MySQL JSON 函数（JSON_SET、JSON_EXTRACT），只支持 $.a.b 形式的路径
+ * H2 把字符串转换为 JSON 时会包成 JSON 字符串，这里传入的值若是包着对象或数组的字符串则先拆开
+ */
+public final class H2Json {
+
+    private H2Json() {
+    }
+
+    /**
+     * 在数据库中注册函数，内存库需使用 DB_CLOSE_DELAY=-1 以便在多个连接间保留
+     *
+     * @param url 数据库地址
+     * @throws SQLException SQL异常
+     */
+    public static void register(String url) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE ALIAS IF NOT EXISTS JSON_SET FOR 'com.miaomc.ssaver.H2Json.jsonSet'");
+            statement.execute("CREATE ALIAS IF NOT EXISTS JSON_EXTRACT FOR 'com.miaomc.ssaver.H2Json.jsonExtract'");
+        }
+    }
+
+    public static String jsonExtract(String document, String path) {
+        if (document == null || path == null) {
+            return null;
+        }
+        JsonElement element = value(document);
+        for (String name : segments(path)) {
+            if (element == null || !element.isJsonObject()) {
+                return null;
+            }
+            element = element.getAsJsonObject().get(name);
+        }
+        return element == null || element.isJsonNull() ? null : element.toString();
+    }
+
+    public static String jsonSet(String document, String... pathsAndValues) {
+        if (document == null) {
+            return null;
+        }
+        JsonObject root = value(document).getAsJsonObject();
+        for (int i = 0; i + 1 < pathsAndValues.length; i += 2) {
+            List<String> path = segments(pathsAndValues[i]);
+            // 与 MySQL 相同，父节点不存在时忽略该路径
+            JsonObject parent = root;
+            for (int j = 0; j < path.size() - 1 && parent != null; j++) {
+                JsonElement child = parent.get(path.get(j));
+                parent = child != null && child.isJsonObject() ? child.getAsJsonObject() : null;
+            }
+            if (parent != null) {
+                parent.add(path.get(path.size() - 1), value(pathsAndValues[i + 1]));
+            }
+        }
+        return root.toString();
+    }
+
+    private static List<String> segments(String path) {
+        if (!path.startsWith("$")) {
+            throw new IllegalArgumentException("不支持的路径: " + path);
+        }
+        String rest = path.substring(1);
+        return rest.isEmpty() ? List.of() : List.of(rest.substring(1).split("\\."));
+    }
+
+    private static JsonElement value(String text) {
+        if (text == null) {
+            return JsonNull.INSTANCE;
+        }
+        JsonElement element;
+        try {
+            element = JsonParser.parseString(text);
+        } catch (JsonParseException e) {
+            return new JsonPrimitive(text);
+        }
+        if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isString()) {
+            String inner = element.getAsString().trim();
+            if (inner.startsWith("{") || inner.startsWith("[")) {
+                return JsonParser.parseString(inner);
+            }
+        }
+        return element;
+    }
+}
@@ -0,0 +1,196 @@
+package com.miaomc.ssaver.listener;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import com.google.gson.JsonObject;
+import com.miaomc.ssaver.SSaver;
+import com.miaomc.ssaver.TestPlugin;
+import com.miaomc.ssaver.utils.MySQL;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Material;
+import org.bukkit.Statistic;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.invocation.InvocationOnMock;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * 保存路径的负载测试：大量玩家同时退出、重新加入，与检查点、批量保存交错写入 H2 数据库，
+ * 检查没有丢失的更新，并统计退出保存的 p50/p99 延迟，超过上限时测试失败。
+ * 规模与上限可通过系统属性调整，如 -Dssaver.load.players=500 -Dssaver.load.maxP99Millis=3000
+ */
+class SaveLoadTest {
+
+    private static final int PLAYERS = Integer.getInteger("ssaver.load.players", 200);
+    private static final int ROUNDS = Integer.getInteger("ssaver.load.rounds", 3);
+    private static final long MAX_P99_MILLIS = Long.getLong("ssaver.load.maxP99Millis", 2000);
+    // 模拟数据库变慢时每次读取、写入前增加的延迟
+    private static final long SLOW_DB_MILLIS = Long.getLong("ssaver.load.slowDbMillis", 20);
+    private static final long SLOW_MAX_P99_MILLIS = Long.getLong("ssaver.load.slowMaxP99Millis", 10000);
+
+    @TempDir
+    Path dataFolder;
+
+    private ServerMock server;
+    private TestPlugin testPlugin;
+    private SSaver plugin;
+    private long startedAt;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = MockBukkit.mock();
+        testPlugin = new TestPlugin(dataFolder.toFile());
+        plugin = testPlugin.start();
+        startedAt = System.currentTimeMillis();
+    }
+
+    @AfterEach
+    void tearDown() {
+        testPlugin.close();
+        MockBukkit.unmock();
+    }
+
+    @Test
+    void concurrentQuitsKeepEveryUpdate() throws Exception {
+        List<Long> latencies = runLoad();
+        assertPercentile("H2", latencies, MAX_P99_MILLIS);
+    }
+
+    /**
+     * 数据库每次读取、写入都变慢时，保存排队但不丢失，延迟仍在上限内
+     */
+    @Test
+    void slowDatabaseKeepsEveryUpdate() throws Exception {
+        MySQL slow = testPlugin.spyMySQL();
+        Executor delayed = CompletableFuture.delayedExecutor(SLOW_DB_MILLIS, TimeUnit.MILLISECONDS);
+        doAnswer(invocation -> delay(invocation, delayed)).when(slow).loadPlayerData(anyString());
+        doAnswer(invocation -> delay(invocation, delayed)).when(slow).saveData(anyString(), any(), anyString());
+
+        List<Long> latencies = runLoad();
+        assertPercentile("慢数据库", latencies, SLOW_MAX_P99_MILLIS);
+    }
+
+    /**
+     * 延迟一段时间后再执行真实的数据库操作，不阻塞调用线程（可能是主线程）
+     */
+    private static CompletableFuture<?> delay(InvocationOnMock invocation, Executor delayed) {
+        return CompletableFuture.runAsync(() -> {
+        }, delayed).thenCompose(ignored -> {
+            try {
+                return (CompletableFuture<?>) invocation.callRealMethod();
+            } catch (Throwable e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * 每轮所有玩家的统计增长、计入 60 秒活跃与 5 秒挂机时间，依次写入检查点、发起批量保存，
+     * 随后全部退出并重新加入，主线程不等待数据库
+     *
+     * @return 每次退出保存从发起到完成的耗时，单位纳秒
+     */
+    private List<Long> runLoad() throws Exception {
+        SessionTracker tracker = plugin.getSessionTracker();
+        SavePlayerData savePlayerData = plugin.getSavePlayerData();
+        Random random = new Random(42);
+
+        List<PlayerMock> players = new ArrayList<>();
+        long[] mined = new long[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            PlayerMock player = server.addPlayer();
+            join(player);
+            players.add(player);
+        }
+
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (int round = 1; round <= ROUNDS; round++) {
+            for (int i = 0; i < PLAYERS; i++) {
+                PlayerMock player = players.get(i);
+                mined[i] += random.nextInt(500);
+                player.setStatistic(Statistic.MINE_BLOCK, Material.STONE, (int) mined[i]);
+                player.setStatistic(Statistic.MINE_BLOCK, Material.DIRT, random.nextInt(200));
+                player.setStatistic(Statistic.JUMP, round * 1000 + random.nextInt(1000));
+                player.setStatistic(Statistic.DEATHS, round);
+                tracker.restore(player.getUniqueId(), 60, 5);
+                futures.add(tracker.checkpoint(player.getUniqueId()));
+            }
+            futures.add(savePlayerData.flushPlayers(players));
+            // 批量保存每 tick 只收集一部分玩家，与退出保存交错
+            server.getScheduler().performOneTick();
+
+            for (PlayerMock player : players) {
+                long start = System.nanoTime();
+                futures.add(savePlayerData.savePlayerStatistics(player)
+                        .whenComplete((result, ex) -> latencies.add(System.nanoTime() - start)));
+                join(player);
+            }
+            server.getScheduler().performTicks(PLAYERS);
+        }
+        for (PlayerMock player : players) {
+            futures.add(savePlayerData.savePlayerStatistics(player));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(300, TimeUnit.SECONDS);
+
+        testPlugin.restoreMySQL();
+        long elapsed = (System.currentTimeMillis() - startedAt) / 1000 + 1;
+        for (int i = 0; i < PLAYERS; i++) {
+            PlayerMock player = players.get(i);
+            JsonObject data = plugin.getMySQL().loadPlayerData(player.getUniqueId().toString()).join();
+            JsonObject meta = data.getAsJsonObject("meta");
+            assertEquals(ROUNDS * 5L, meta.get("afkTimeInSeconds").getAsLong());
+            long onlineTime = meta.get("onlineTimeInSeconds").getAsLong();
+            assertTrue(onlineTime >= ROUNDS * 60L && onlineTime <= ROUNDS * 60L + elapsed,
+                    "玩家 " + i + " 的在线时间为 " + onlineTime);
+            assertEquals(mined[i], data.getAsJsonObject("blocks").get("MINE_STONE").getAsLong());
+            assertEquals(player.getStatistic(Statistic.JUMP), data.getAsJsonObject("general").get("JUMP").getAsLong());
+        }
+        assertEquals(0, plugin.getPendingSaves().size());
+        assertEquals(PLAYERS * ROUNDS, latencies.size());
+        return new ArrayList<>(latencies);
+    }
+
+    private void join(PlayerMock player) {
+        PlayerJoinEvent event = new PlayerJoinEvent(player, Component.text(""));
+        plugin.getSessionTracker().onPlayerJoin(event);
+        plugin.getLiveStatistics().onPlayerJoin(event);
+    }
+
+    private void assertPercentile(String name, List<Long> latencies, long maxP99Millis) {
+        Collections.sort(latencies);
+        long p50 = percentile(latencies, 0.50);
+        long p99 = percentile(latencies, 0.99);
+        plugin.getLogger().info(String.format("%s：%d 名玩家 %d 轮，退出保存 p50 %d ms，p99 %d ms，最大 %d ms",
+                name, PLAYERS, ROUNDS, p50, p99, TimeUnit.NANOSECONDS.toMillis(latencies.get(latencies.size() - 1))));
+        assertTrue(p99 <= maxP99Millis, name + " 退出保存 p99 为 " + p99 + " ms，超过上限 " + maxP99Millis + " ms");
+    }
+
+    /**
+     * @return 已排序的耗时中指定分位的值，单位毫秒
+     */
+    private static long percentile(List<Long> sorted, double quantile) {
+        int index = Math.max(0, (int) Math.ceil(quantile * sorted.size()) - 1);
+        return TimeUnit.NANOSECONDS.toMillis(sorted.get(index));
+    }
+}
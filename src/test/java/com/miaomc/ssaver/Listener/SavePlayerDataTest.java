@@ -0,0 +1,411 @@
+package com.miaomc.ssaver.listener;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.miaomc.ssaver.FakeRedis;
+import com.miaomc.ssaver.SSaver;
+import com.miaomc.ssaver.TestPlugin;
+import com.miaomc.ssaver.utils.MySQL;
+import com.miaomc.ssaver.utils.RedisCache;
+import com.miaomc.ssaver.utils.StoredRow;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Material;
+import org.bukkit.Statistic;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerStatisticIncrementEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 通过真实的保存路径（退出保存、批量保存、检查点、本地暂存回放）读写 H2 数据库，
+ * 检查在线时间不丢失、不重复计算，统计不被旧数据覆盖
+ */
+class SavePlayerDataTest {
+
+    @TempDir
+    Path dataFolder;
+
+    private ServerMock server;
+    private TestPlugin testPlugin;
+    private SSaver plugin;
+    private long startedAt;
+
+    @BeforeEach
+    void setUp() {
+        server = MockBukkit.mock();
+        testPlugin = new TestPlugin(dataFolder.toFile());
+        startedAt = System.currentTimeMillis();
+    }
+
+    @AfterEach
+    void tearDown() {
+        testPlugin.close();
+        MockBukkit.unmock();
+    }
+
+    private PlayerMock join() {
+        PlayerMock player = server.addPlayer();
+        rejoin(player);
+        return player;
+    }
+
+    private void rejoin(PlayerMock player) {
+        PlayerJoinEvent event = new PlayerJoinEvent(player, Component.text(""));
+        plugin.getSessionTracker().onPlayerJoin(event);
+        plugin.getLiveStatistics().onPlayerJoin(event);
+    }
+
+    private void store(PlayerMock player, String data) {
+        assertTrue(plugin.getMySQL().saveData(player.getUniqueId().toString(),
+                JsonParser.parseString(data).getAsJsonObject(), "1.21").join());
+    }
+
+    private JsonObject read(PlayerMock player) {
+        return plugin.getMySQL().getPlayerData(player.getUniqueId().toString()).join();
+    }
+
+    /**
+     * 批量保存在主线程分批收集，推进足够的 tick 后等待写入完成
+     */
+    private SavePlayerData.FlushResult flush(List<PlayerMock> players) throws Exception {
+        CompletableFuture<SavePlayerData.FlushResult> future = plugin.getSavePlayerData().flushPlayers(players);
+        server.getScheduler().performTicks(players.size() + 1);
+        return future.get(30, TimeUnit.SECONDS);
+    }
+
+    private static void await(List<CompletableFuture<?>> futures) throws Exception {
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 会话中自动计入的时间来自真实时钟，不超过测试已运行的时长
+     */
+    private void assertOnlineTime(long expected, JsonObject data) {
+        long actual = data.getAsJsonObject("meta").get("onlineTimeInSeconds").getAsLong();
+        long elapsed = (System.currentTimeMillis() - startedAt) / 1000 + 1;
+        assertTrue(actual >= expected && actual <= expected + elapsed,
+                "在线时间应为 " + expected + " 至 " + (expected + elapsed) + "，实际为 " + actual);
+    }
+
+    private List<JsonObject> readPending() throws Exception {
+        File[] files = new File(dataFolder.toFile(), "pending").listFiles((dir, name) -> name.endsWith(".json"));
+        assertNotNull(files);
+        Arrays.sort(files);
+        List<JsonObject> entries = new ArrayList<>();
+        for (File file : files) {
+            entries.add(JsonParser.parseString(Files.readString(file.toPath(), StandardCharsets.UTF_8)).getAsJsonObject());
+        }
+        return entries;
+    }
+
+    @Test
+    void quitSavesStatisticsAndOnlineTime() throws Exception {
+        plugin = testPlugin.start();
+        PlayerMock player = join();
+        player.setStatistic(Statistic.MINE_BLOCK, Material.STONE, 12);
+        plugin.getSessionTracker().restore(player.getUniqueId(), 100, 5);
+
+        plugin.getSavePlayerData().savePlayerStatistics(player).get(30, TimeUnit.SECONDS);
+
+        JsonObject data = read(player);
+        assertEquals(12, data.getAsJsonObject("blocks").get("MINE_STONE").getAsLong());
+        assertEquals(player.getName(), data.getAsJsonObject("meta").get("playerName").getAsString());
+        assertEquals(5, data.getAsJsonObject("meta").get("afkTimeInSeconds").getAsLong());
+        assertOnlineTime(100, data);
+    }
+
+    /**
+     * 主线程连续发出检查点、批量保存、退出与重新加入，不等待数据库，写入在后台交错执行。
+     * 每名玩家每轮计入 10 秒活跃、1 秒挂机时间，最后检查总时间与最终统计
+     */
+    @Test
+    void concurrentCheckpointsFlushesAndQuitsKeepEverySecond() throws Exception {
+        plugin = testPlugin.start();
+        SessionTracker tracker = plugin.getSessionTracker();
+        SavePlayerData savePlayerData = plugin.getSavePlayerData();
+
+        int playerCount = 20;
+        int rounds = 12;
+        List<PlayerMock> players = new ArrayList<>();
+        for (int i = 0; i < playerCount; i++) {
+            players.add(join());
+        }
+
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (int round = 1; round <= rounds; round++) {
+            for (int i = 0; i < playerCount; i++) {
+                PlayerMock player = players.get(i);
+                player.setStatistic(Statistic.MINE_BLOCK, Material.STONE, round * 100 + i);
+                tracker.restore(player.getUniqueId(), 10, 1);
+                futures.add(tracker.checkpoint(player.getUniqueId()));
+            }
+            if (round % 2 == 0) {
+                futures.add(savePlayerData.flushPlayers(players));
+            }
+            if (round % 3 == 0) {
+                for (int i = round % 2; i < playerCount; i += 2) {
+                    futures.add(savePlayerData.savePlayerStatistics(players.get(i)));
+                    rejoin(players.get(i));
+                }
+            }
+            // 批量保存每 tick 只收集一部分玩家，与之后几轮的检查点、退出交错
+            server.getScheduler().performOneTick();
+        }
+        server.getScheduler().performTicks(playerCount);
+        for (PlayerMock player : players) {
+            futures.add(savePlayerData.savePlayerStatistics(player));
+        }
+        await(futures);
+
+        for (int i = 0; i < playerCount; i++) {
+            JsonObject data = read(players.get(i));
+            assertEquals(rounds, data.getAsJsonObject("meta").get("afkTimeInSeconds").getAsLong());
+            assertOnlineTime(rounds * 10L, data);
+            assertEquals(rounds * 100L + i, data.getAsJsonObject("blocks").get("MINE_STONE").getAsLong());
+        }
+        assertEquals(0, plugin.getPendingSaves().size());
+    }
+
+    /**
+     * 批量保存时读取失败的玩家计入暂存数量，增量暂存到本地，数据库恢复后回放
+     */
+    @Test
+    void flushReadFailureIsSpooledAndReplayed() throws Exception {
+        plugin = testPlugin.start();
+        PlayerMock player = join();
+        plugin.getSessionTracker().restore(player.getUniqueId(), 100, 0);
+
+        MySQL mySQL = testPlugin.spyMySQL();
+        doReturn(CompletableFuture.failedFuture(new SQLException("数据库不可用")))
+                .when(mySQL).loadPlayerData(anyString());
+
+        SavePlayerData.FlushResult result = flush(List.of(player));
+        assertEquals(0, result.saved());
+        assertEquals(1, result.spooled());
+        assertEquals(1, plugin.getPendingSaves().size());
+
+        testPlugin.restoreMySQL();
+        for (JsonObject entry : readPending()) {
+            assertTrue(plugin.getSavePlayerData().replayPending(entry));
+        }
+        assertOnlineTime(100, read(player));
+    }
+
+    /**
+     * 回放排在玩家的写入链上：退出保存已读取、尚未写回时开始回放，两边的在线时间都保留
+     */
+    @Test
+    void replayIsSerializedWithQuitSave() throws Exception {
+        plugin = testPlugin.start();
+        PlayerMock player = join();
+        plugin.getSessionTracker().restore(player.getUniqueId(), 100, 0);
+
+        MySQL failing = testPlugin.spyMySQL();
+        doReturn(CompletableFuture.failedFuture(new SQLException("数据库不可用")))
+                .when(failing).loadPlayerData(anyString());
+        assertEquals(1, flush(List.of(player)).spooled());
+        JsonObject entry = readPending().get(0);
+
+        // 每次写回前等待一段时间，让回放有机会插在退出保存的读取与写回之间
+        MySQL slow = testPlugin.spyMySQL();
+        CountDownLatch saving = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            saving.countDown();
+            Thread.sleep(300);
+            return invocation.callRealMethod();
+        }).when(slow).saveData(anyString(), any(), anyString());
+
+        plugin.getSessionTracker().restore(player.getUniqueId(), 50, 0);
+        CompletableFuture<?> quit = plugin.getSavePlayerData().savePlayerStatistics(player);
+        assertTrue(saving.await(30, TimeUnit.SECONDS));
+        assertTrue(plugin.getSavePlayerData().replayPending(entry));
+        quit.get(30, TimeUnit.SECONDS);
+
+        assertOnlineTime(150, read(player));
+    }
+
+    /**
+     * 暂存后回放的变化早于数据库中的数据时，统计只取较大值，挖掘总数只累加新增的方块
+     */
+    @Test
+    void stalePartialUpdateKeepsNewerStatistics() throws Exception {
+        plugin = testPlugin.start();
+        PlayerMock player = join();
+        player.setStatistic(Statistic.MINE_BLOCK, Material.STONE, 50);
+        plugin.getSavePlayerData().savePlayerStatistics(player).get(30, TimeUnit.SECONDS);
+
+        JsonObject before = read(player);
+        long totalMined = before.getAsJsonObject("general").get("TOTAL_BLOCKS_MINED").getAsLong();
+        long onlineTime = before.getAsJsonObject("meta").get("onlineTimeInSeconds").getAsLong();
+
+        JsonObject blocks = new JsonObject();
+        blocks.addProperty("MINE_STONE", 40);
+        blocks.addProperty("MINE_DIRT", 5);
+        JsonObject statistics = new JsonObject();
+        statistics.add("blocks", blocks);
+        statistics.add("general", new JsonObject());
+        statistics.add("entities", new JsonObject());
+        statistics.add("items", new JsonObject());
+        statistics.addProperty("partial", true);
+
+        JsonObject update = new JsonObject();
+        update.addProperty("uuid", player.getUniqueId().toString());
+        update.addProperty("playerName", player.getName());
+        update.addProperty("firstPlayed", 0);
+        update.addProperty("activeSeconds", 7);
+        update.addProperty("afkSeconds", 0);
+        update.addProperty("savedAt", 1);
+        update.addProperty("dataVersion", "1.21");
+        update.add("statistics", statistics);
+
+        assertTrue(plugin.getSavePlayerData().replayPending(update));
+
+        JsonObject after = read(player);
+        assertEquals(50, after.getAsJsonObject("blocks").get("MINE_STONE").getAsLong());
+        assertEquals(5, after.getAsJsonObject("blocks").get("MINE_DIRT").getAsLong());
+        assertEquals(totalMined + 5, after.getAsJsonObject("general").get("TOTAL_BLOCKS_MINED").getAsLong());
+        assertEquals(onlineTime + 7, after.getAsJsonObject("meta").get("onlineTimeInSeconds").getAsLong());
+        assertEquals(player.getName(), after.getAsJsonObject("meta").get("playerName").getAsString());
+    }
+
+    /**
+     * 共享缓存中残留旧数据（如清除失败）时，保存仍以数据库中的数据为基础合并
+     */
+    @Test
+    void mergeReadsDatabaseNotStaleCache() throws Exception {
+        try (FakeRedis redis = new FakeRedis()) {
+            plugin = testPlugin.start();
+            RedisCache redisCache = testPlugin.startRedis(redis.getPort());
+            PlayerMock player = join();
+            String uuid = player.getUniqueId().toString();
+            plugin.getSessionTracker().restore(player.getUniqueId(), 100, 0);
+            plugin.getSavePlayerData().savePlayerStatistics(player).get(30, TimeUnit.SECONDS);
+
+            JsonObject meta = new JsonObject();
+            meta.addProperty("onlineTimeInSeconds", 0);
+            JsonObject stale = new JsonObject();
+            stale.add("meta", meta);
+            redisCache.write(List.of(new StoredRow(uuid, "test", stale.toString(), "1.21")));
+
+            rejoin(player);
+            plugin.getSessionTracker().restore(player.getUniqueId(), 10, 0);
+            plugin.getSavePlayerData().savePlayerStatistics(player).get(30, TimeUnit.SECONDS);
+            assertOnlineTime(110, plugin.getMySQL().loadPlayerData(uuid).join());
+        }
+    }
+
+    /**
+     * 实时统计模式下，完整数据写入成功后才改为只保存变化
+     */
+    @Test
+    void liveBaselineIsConfirmedOnlyAfterFullWrite() throws Exception {
+        testPlugin.set("settings.liveStatistics", true);
+        plugin = testPlugin.start();
+        PlayerMock player = server.addPlayer();
+        // 数据库中已有统计，不代表本次会话的统计已经写入
+        store(player, "{\"blocks\":{\"MINE_STONE\":1}}");
+        rejoin(player);
+        assertFalse(plugin.getLiveStatistics().hasBaseline(player.getUniqueId()));
+
+        MySQL mySQL = testPlugin.spyMySQL();
+        doThrow(new SQLException("数据库不可用")).when(mySQL).upsertBatch(anyList());
+        SavePlayerData.FlushResult failed = flush(List.of(player));
+        assertEquals(1, failed.spooled());
+        assertFalse(plugin.getLiveStatistics().hasBaseline(player.getUniqueId()));
+
+        testPlugin.restoreMySQL();
+        SavePlayerData.FlushResult saved = flush(List.of(player));
+        assertEquals(1, saved.saved());
+        assertTrue(plugin.getLiveStatistics().hasBaseline(player.getUniqueId()));
+    }
+
+    /**
+     * 数据库中的统计已过时（如来自旧版本或其他服务器）时，本次会话先完整保存一次纠正，之后才只写出变化
+     */
+    @Test
+    void staleStoredRowIsCorrectedBeforePartialSaves() throws Exception {
+        testPlugin.set("settings.liveStatistics", true);
+        plugin = testPlugin.start();
+        PlayerMock player = server.addPlayer();
+        player.setStatistic(Statistic.MINE_BLOCK, Material.STONE, 40);
+        player.setStatistic(Statistic.MINE_BLOCK, Material.DIRT, 5);
+        store(player, "{\"blocks\":{\"MINE_STONE\":999,\"MINE_DIRT\":1}}");
+        rejoin(player);
+
+        assertEquals(1, flush(List.of(player)).saved());
+        assertTrue(plugin.getLiveStatistics().hasBaseline(player.getUniqueId()));
+
+        player.setStatistic(Statistic.MINE_BLOCK, Material.DIRT, 6);
+        plugin.getLiveStatistics().onStatisticIncrement(
+                new PlayerStatisticIncrementEvent(player, Statistic.MINE_BLOCK, 5, 6, Material.DIRT));
+        assertEquals(1, flush(List.of(player)).saved());
+
+        JsonObject data = read(player);
+        assertEquals(40, data.getAsJsonObject("blocks").get("MINE_STONE").getAsLong());
+        assertEquals(6, data.getAsJsonObject("blocks").get("MINE_DIRT").getAsLong());
+        assertEquals(46, data.getAsJsonObject("general").get("TOTAL_BLOCKS_MINED").getAsLong());
+    }
+
+    /**
+     * 批量保存每 tick 只收集配置数量的玩家，全部收集完后才一次写入
+     */
+    @Test
+    void flushCollectsBoundedPlayersPerTick() throws Exception {
+        testPlugin.set("settings.flushPlayersPerTick", 2);
+        plugin = testPlugin.start();
+        List<PlayerMock> players = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            PlayerMock player = join();
+            player.setStatistic(Statistic.MINE_BLOCK, Material.STONE, i + 1);
+            players.add(player);
+        }
+
+        MySQL mySQL = testPlugin.spyMySQL();
+        SavePlayerData savePlayerData = spy(plugin.getSavePlayerData());
+        CompletableFuture<SavePlayerData.FlushResult> future = savePlayerData.flushPlayers(players);
+        verify(savePlayerData, never()).collectStatistics(any());
+
+        for (int collected : new int[]{2, 4, 5}) {
+            server.getScheduler().performOneTick();
+            verify(savePlayerData, times(collected)).collectStatistics(any());
+        }
+
+        assertEquals(5, future.get(30, TimeUnit.SECONDS).saved());
+        verify(mySQL, times(1)).upsertBatch(anyList());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, read(players.get(i)).getAsJsonObject("blocks").get("MINE_STONE").getAsLong());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.miaomc.ssaver;
+
+import com.miaomc.ssaver.listener.LiveStatistics;
+import com.miaomc.ssaver.listener.SavePlayerData;
+import com.miaomc.ssaver.listener.SessionTracker;
+import com.miaomc.ssaver.utils.MySQL;
+import com.miaomc.ssaver.utils.PendingSaves;
+import com.miaomc.ssaver.utils.PlayerDataCache;
+import com.miaomc.ssaver.utils.RedisCache;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 测试用的插件环境
+ * 插件本体用 Mockito 模拟，各组件使用真实实现，数据库为 MySQL 兼容模式的 H2 内存库，每个实例一个独立的库。
+ * 服务器与玩家由 MockBukkit 提供，需在创建前调用 MockBukkit.mock()。
+ */
+public final class TestPlugin {
+
+    private static final AtomicInteger DATABASE_ID = new AtomicInteger();
+
+    private final SSaver plugin = mock(SSaver.class);
+    private final YamlConfiguration config = new YamlConfiguration();
+    private final String url = "jdbc:h2:mem:ssaver" + DATABASE_ID.incrementAndGet()
+            + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private MySQL mySQL;
+    private RedisCache redisCache;
+
+    /**
+     * @param dataFolder 插件数据目录，本地暂存写入其中
+     */
+    public TestPlugin(File dataFolder) {
+        config.set("database.url", url);
+        config.set("database.username", "sa");
+        config.set("database.password", "");
+        config.set("database.tablename", "playerstatistics");
+        config.set("settings.serverName", "test");
+        config.set("settings.saveAsync", false);
+        config.set("settings.showSaveMessages", false);
+        config.set("settings.minSessionTime", 0);
+
+        when(plugin.getConfig()).thenReturn(config);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("SSaver-Test"));
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getName()).thenReturn("SSaver");
+        when(plugin.isEnabled()).thenReturn(true);
+    }
+
+    /**
+     * 修改配置，须在 {@link #start()} 前调用
+     */
+    public TestPlugin set(String path, Object value) {
+        config.set(path, value);
+        return this;
+    }
+
+    /**
+     * 按当前配置创建各组件并建表
+     *
+     * @return 插件
+     */
+    public SSaver start() throws SQLException {
+        H2Json.register(url);
+
+        mySQL = new MySQL(plugin);
+        when(plugin.getMySQL()).thenReturn(mySQL);
+        if (!mySQL.testConnection()) {
+            throw new SQLException("无法连接测试数据库");
+        }
+
+        PlayerDataCache playerDataCache = new PlayerDataCache(plugin);
+        when(plugin.getPlayerDataCache()).thenReturn(playerDataCache);
+        SessionTracker sessionTracker = new SessionTracker(plugin);
+        when(plugin.getSessionTracker()).thenReturn(sessionTracker);
+        LiveStatistics liveStatistics = new LiveStatistics(plugin);
+        when(plugin.getLiveStatistics()).thenReturn(liveStatistics);
+        PendingSaves pendingSaves = new PendingSaves(plugin);
+        when(plugin.getPendingSaves()).thenReturn(pendingSaves);
+        SavePlayerData savePlayerData = new SavePlayerData(plugin);
+        when(plugin.getSavePlayerData()).thenReturn(savePlayerData);
+        return plugin;
+    }
+
+    /**
+     * 启用共享缓存，连接到指定端口的 Redis，须在 {@link #start()} 后调用
+     *
+     * @param port Redis 端口
+     * @return 共享缓存
+     */
+    public RedisCache startRedis(int port) {
+        config.set("cache.redis.host", "127.0.0.1");
+        config.set("cache.redis.port", port);
+        redisCache = new RedisCache(plugin);
+        when(plugin.getRedisCache()).thenReturn(redisCache);
+        return redisCache;
+    }
+
+    /**
+     * 使用指定的共享缓存（如模拟故障的 mock），须在 {@link #start()} 后调用
+     *
+     * @param cache 共享缓存
+     */
+    public void useRedis(RedisCache cache) {
+        when(plugin.getRedisCache()).thenReturn(cache);
+    }
+
+    /**
+     * 把插件使用的 MySQL 换成 spy，用于模拟数据库故障
+     *
+     * @return spy
+     */
+    public MySQL spyMySQL() {
+        MySQL spy = Mockito.spy(mySQL);
+        when(plugin.getMySQL()).thenReturn(spy);
+        return spy;
+    }
+
+    /**
+     * 恢复使用真实的 MySQL
+     */
+    public void restoreMySQL() {
+        when(plugin.getMySQL()).thenReturn(mySQL);
+    }
+
+    /**
+     * 关闭连接池与共享缓存并删除内存库
+     */
+    public void close() {
+        if (redisCache != null) {
+            redisCache.close();
+        }
+        if (mySQL != null) {
+            mySQL.close();
+        }
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        } catch (SQLException ignored) {
+            // 库已关闭
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.miaomc.ssaver.utils;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static CircuitBreaker breaker(int maxPool, long maxWaitMillis) {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("circuitBreaker.windowSize", 4);
+        config.set("circuitBreaker.failureRateThreshold", 50);
+        config.set("circuitBreaker.openSeconds", 60);
+        config.set("circuitBreaker.maxWaitMillis", maxWaitMillis);
+        return new CircuitBreaker(config, maxPool);
+    }
+
+    /**
+     * 正常状态下超出并发限制的请求排队，前面的调用结束后放行，而不是立即拒绝
+     */
+    @Test
+    void burstBeyondLimitWaitsForPermit() throws Exception {
+        CircuitBreaker breaker = breaker(2, 5000);
+        assertTrue(breaker.acquire().get());
+        assertTrue(breaker.acquire().get());
+
+        CompletableFuture<Boolean> queued = breaker.acquire();
+        assertFalse(queued.isDone());
+        assertEquals(1, breaker.getQueued());
+
+        breaker.release(0, true);
+        assertTrue(queued.get(1, TimeUnit.SECONDS));
+        assertEquals(2, breaker.getInFlight());
+        assertEquals(0, breaker.getRejected());
+    }
+
+    /**
+     * 排队超时后才拒绝
+     */
+    @Test
+    void queuedRequestIsRejectedAfterMaxWait() throws Exception {
+        CircuitBreaker breaker = breaker(1, 50);
+        assertTrue(breaker.acquire().get());
+
+        assertFalse(breaker.acquire().get(5, TimeUnit.SECONDS));
+        assertEquals(0, breaker.getQueued());
+        assertEquals(1, breaker.getRejected());
+
+        // 超时的请求不占用许可
+        breaker.release(0, true);
+        assertEquals(0, breaker.getInFlight());
+    }
+
+    /**
+     * 熔断后等待中的请求全部拒绝，新请求不排队直接拒绝
+     */
+    @Test
+    void openBreakerShedsQueueAndRejectsImmediately() throws Exception {
+        CircuitBreaker breaker = breaker(4, 5000);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.acquire().get());
+        }
+        CompletableFuture<Boolean> queued = breaker.acquire();
+
+        for (int i = 0; i < 4; i++) {
+            breaker.release(0, false);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(queued.get(1, TimeUnit.SECONDS));
+
+        CompletableFuture<Boolean> rejected = breaker.acquire();
+        assertTrue(rejected.isDone());
+        assertFalse(rejected.get());
+    }
+
+    /**
+     * 后台任务的失败只计入熔断统计，不占用许可也不收紧并发限制；熔断后后台任务停止
+     */
+    @Test
+    void backgroundFailuresOnlyCountTowardsBreaker() {
+        CircuitBreaker breaker = breaker(4, 5000);
+        assertTrue(breaker.allowBackground());
+
+        for (int i = 0; i < 4; i++) {
+            breaker.recordBackgroundFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(4, breaker.getLimit());
+        assertEquals(0, breaker.getInFlight());
+        assertFalse(breaker.allowBackground());
+    }
+
+    /**
+     * 归还未使用的许可会放行排队的请求
+     */
+    @Test
+    void abandonedPermitIsHandedToNextWaiter() throws Exception {
+        CircuitBreaker breaker = breaker(1, 5000);
+        assertTrue(breaker.acquire().get());
+        CompletableFuture<Boolean> queued = breaker.acquire();
+
+        breaker.abandon();
+        assertTrue(queued.get(1, TimeUnit.SECONDS));
+        assertEquals(1, breaker.getInFlight());
+    }
+}
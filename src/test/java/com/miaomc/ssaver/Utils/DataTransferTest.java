@@ -0,0 +1,213 @@
+package com.miaomc.ssaver.utils;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.miaomc.ssaver.SSaver;
+import com.miaomc.ssaver.TestPlugin;
+import org.bukkit.command.CommandSender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 通过 H2 数据库测试后台的数据导出、导入与结构升级
+ */
+class DataTransferTest {
+
+    @TempDir
+    Path dataFolder;
+
+    private TestPlugin testPlugin;
+    private SSaver plugin;
+    private DataTransfer transfer;
+    private final CommandSender sender = mock(CommandSender.class);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockBukkit.mock();
+        testPlugin = new TestPlugin(dataFolder.toFile());
+        plugin = testPlugin.start();
+        transfer = new DataTransfer(plugin);
+    }
+
+    @AfterEach
+    void tearDown() {
+        transfer.shutdown();
+        testPlugin.close();
+        MockBukkit.unmock();
+    }
+
+    /**
+     * 启动后台任务并等待其结束
+     */
+    private void run(BooleanSupplier task) throws InterruptedException {
+        assertTrue(task.getAsBoolean());
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (transfer.isRunning()) {
+            assertTrue(System.currentTimeMillis() < deadline, "后台任务超时");
+            Thread.sleep(10);
+        }
+    }
+
+    private Map<String, StoredRow> readAll() throws Exception {
+        Map<String, StoredRow> rows = new HashMap<>();
+        plugin.getMySQL().streamAllData(100, row -> rows.put(row.uuid(), row));
+        return rows;
+    }
+
+    private static JsonObject entities(StoredRow row) {
+        return JsonParser.parseString(row.data()).getAsJsonObject().getAsJsonObject("entities");
+    }
+
+    /**
+     * /ssaver upgrade 按 dataVersion 推断未记录结构版本的行，写回时比对原数据，期间被保存改动过的行跳过
+     */
+    @Test
+    void upgradeRewritesOldRowsAndSkipsConcurrentChanges() throws Exception {
+        String legacy = UUID.randomUUID().toString();
+        String recent = UUID.randomUUID().toString();
+        String recorded = UUID.randomUUID().toString();
+        String changed = UUID.randomUUID().toString();
+        String recordedData = "{\"meta\":{\"schemaVersion\":" + SchemaRegistry.CURRENT_VERSION + "},"
+                + "\"entities\":{\"KILL_SPLASH_POTION\":5}}";
+        plugin.getMySQL().upsertBatch(List.of(
+                new StoredRow(legacy, "test", "{\"entities\":{\"KILL_SPLASH_POTION\":3}}", "1.20.4"),
+                new StoredRow(recent, "test", "{\"entities\":{\"KILL_SPLASH_POTION\":4}}", "1.21.5"),
+                new StoredRow(recorded, "test", recordedData, "1.20.4"),
+                new StoredRow(changed, "test", "{\"entities\":{\"KILL_SPLASH_POTION\":6}}", "1.20.4")));
+
+        // 升级读取之后、写回之前，其中一行被正常保存改动
+        JsonObject saved = JsonParser.parseString("{\"entities\":{\"KILL_POTION\":7}}").getAsJsonObject();
+        MySQL mySQL = testPlugin.spyMySQL();
+        doAnswer(invocation -> {
+            assertTrue(mySQL.saveData(changed, saved, "1.21").join());
+            return invocation.callRealMethod();
+        }).when(mySQL).compareAndSetBatch(anyList(), anyList());
+
+        run(() -> transfer.upgradeData(sender));
+        verify(sender).sendMessage(contains("升级 2 行，跳过 1 行"));
+
+        Map<String, StoredRow> rows = readAll();
+        assertEquals(3, entities(rows.get(legacy)).get("KILL_POTION").getAsInt());
+        assertFalse(entities(rows.get(legacy)).has("KILL_SPLASH_POTION"));
+        assertEquals(4, entities(rows.get(recent)).get("KILL_SPLASH_POTION").getAsInt());
+        assertTrue(SchemaRegistry.hasRecordedVersion(JsonParser.parseString(rows.get(recent).data()).getAsJsonObject()));
+        assertEquals(JsonParser.parseString(recordedData), JsonParser.parseString(rows.get(recorded).data()));
+        assertEquals(saved, JsonParser.parseString(rows.get(changed).data()));
+    }
+
+    @Test
+    void csvExportImportRoundTrip() throws Exception {
+        roundTrip("csv", ".csv.gz");
+    }
+
+    @Test
+    void ndjsonExportImportRoundTrip() throws Exception {
+        roundTrip("json", ".ndjson.gz");
+    }
+
+    /**
+     * 导出后导入到另一个空表，服务器名称与数据中的逗号、引号、换行转义都原样往返
+     */
+    private void roundTrip(String format, String extension) throws Exception {
+        String plain = UUID.randomUUID().toString();
+        String tricky = UUID.randomUUID().toString();
+        List<StoredRow> original = List.of(
+                new StoredRow(plain, "test", "{\"blocks\":{\"MINE_STONE\":1}}", "1.21"),
+                new StoredRow(tricky, "lobby,\"main\"",
+                        "{\"names\":{\"a,b\":1,\"say \\\"hi\\\"\":2,\"line\\nbreak\":3},\"text\":\"\\\",\\\"\"}",
+                        "1.20.4"));
+        plugin.getMySQL().upsertBatch(original);
+
+        run(() -> transfer.exportData(sender, format));
+        File[] files = transfer.getExportFolder().listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        assertTrue(files[0].getName().endsWith(extension));
+
+        // 另一个独立的空库，与导出方共用数据目录
+        TestPlugin target = new TestPlugin(dataFolder.toFile()).set("transfer.batchSize", 1);
+        SSaver targetPlugin = target.start();
+        DataTransfer targetTransfer = new DataTransfer(targetPlugin);
+        try {
+            assertTrue(targetTransfer.importData(sender, files[0].getName(), null));
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (targetTransfer.isRunning()) {
+                assertTrue(System.currentTimeMillis() < deadline, "后台任务超时");
+                Thread.sleep(10);
+            }
+            verify(sender).sendMessage(contains("导入完成，共 2 行，跳过 0 行"));
+
+            Map<String, StoredRow> rows = new HashMap<>();
+            targetPlugin.getMySQL().streamAllData(100, row -> rows.put(row.uuid(), row));
+            assertEquals(2, rows.size());
+            for (StoredRow expected : original) {
+                StoredRow actual = rows.get(expected.uuid());
+                assertEquals(expected.serverName(), actual.serverName());
+                assertEquals(expected.dataVersion(), actual.dataVersion());
+                assertEquals(JsonParser.parseString(expected.data()), JsonParser.parseString(actual.data()));
+            }
+        } finally {
+            targetTransfer.shutdown();
+            target.close();
+        }
+    }
+
+    /**
+     * 无效的行跳过并计数，不影响同一文件中的其他行
+     */
+    @Test
+    void malformedLinesAreSkipped() throws Exception {
+        String first = UUID.randomUUID().toString();
+        String second = UUID.randomUUID().toString();
+        Files.createDirectories(transfer.getExportFolder().toPath());
+        Files.writeString(transfer.getExportFolder().toPath().resolve("broken.csv"), String.join("\n",
+                "uuid,serverName,dataVersion,data",
+                "\"" + first + "\",\"test\",\"1.21\",\"{\"\"blocks\"\":{\"\"MINE_STONE\"\":1}}\"",
+                "\"only\",\"three\",\"columns\"",
+                "\"" + UUID.randomUUID() + "\",\"test\",\"1.21\",\"{not json\"",
+                "\"" + UUID.randomUUID() + "\",\"test\",\"1.21\",\"[1,2]\"",
+                "",
+                "\"" + second + "\",\"test\",\"1.21\",\"{}\""), StandardCharsets.UTF_8);
+        Files.writeString(transfer.getExportFolder().toPath().resolve("broken.ndjson"), String.join("\n",
+                "{\"uuid\":\"" + UUID.randomUUID() + "\",\"serverName\":\"test\",\"dataVersion\":\"1.21\",\"data\":{}",
+                "{\"serverName\":\"test\",\"dataVersion\":\"1.21\",\"data\":{}}",
+                "{\"uuid\":\"" + UUID.randomUUID() + "\",\"serverName\":\"test\",\"dataVersion\":\"1.21\",\"data\":\"{}\"}",
+                "not json at all",
+                "{\"uuid\":\"" + first + "\",\"serverName\":\"test\",\"dataVersion\":\"1.21\",\"data\":{\"blocks\":{\"MINE_STONE\":2}}}"),
+                StandardCharsets.UTF_8);
+
+        run(() -> transfer.importData(sender, "broken.csv", null));
+        verify(sender).sendMessage(contains("导入完成，共 2 行，跳过 3 行"));
+        run(() -> transfer.importData(sender, "broken.ndjson", null));
+        verify(sender).sendMessage(contains("导入完成，共 1 行，跳过 4 行"));
+
+        Map<String, StoredRow> rows = readAll();
+        assertEquals(2, rows.size());
+        assertEquals(2, JsonParser.parseString(rows.get(first).data()).getAsJsonObject()
+                .getAsJsonObject("blocks").get("MINE_STONE").getAsInt());
+        assertEquals(JsonParser.parseString("{}"), JsonParser.parseString(rows.get(second).data()));
+    }
+}
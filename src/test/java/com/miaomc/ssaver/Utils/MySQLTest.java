@@ -0,0 +1,193 @@
+package com.miaomc.ssaver.utils;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import com.google.gson.JsonObject;
+import com.miaomc.ssaver.FakeRedis;
+import com.miaomc.ssaver.TestPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+class MySQLTest {
+
+    @TempDir
+    Path dataFolder;
+
+    private TestPlugin testPlugin;
+    private MySQL mySQL;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockBukkit.mock();
+        // 超过 500 毫秒的调用计为慢调用
+        testPlugin = new TestPlugin(dataFolder.toFile()).set("circuitBreaker.slowCallMillis", 500);
+        mySQL = testPlugin.start().getMySQL();
+    }
+
+    @AfterEach
+    void tearDown() {
+        testPlugin.close();
+        MockBukkit.unmock();
+    }
+
+    private static JsonObject meta(long onlineTime) {
+        JsonObject meta = new JsonObject();
+        meta.addProperty("onlineTimeInSeconds", onlineTime);
+        JsonObject data = new JsonObject();
+        data.add("meta", meta);
+        return data;
+    }
+
+    private static long onlineTime(JsonObject data) {
+        return data.getAsJsonObject("meta").get("onlineTimeInSeconds").getAsLong();
+    }
+
+    @Test
+    void saveAndReadBack() {
+        String uuid = UUID.randomUUID().toString();
+        assertNull(mySQL.getPlayerData(uuid).join());
+
+        assertTrue(mySQL.saveData(uuid, meta(10), "1.21").join());
+        assertTrue(mySQL.saveData(uuid, meta(20), "1.21").join());
+        assertEquals(20, onlineTime(mySQL.getPlayerData(uuid).join()));
+    }
+
+    @Test
+    void addOnlineTimeCreatesAndIncrements() {
+        String uuid = UUID.randomUUID().toString();
+        assertTrue(mySQL.addOnlineTime(uuid, 30, 5, "1.21").join());
+        assertTrue(mySQL.addOnlineTime(uuid, 12, 1, "1.21").join());
+
+        JsonObject data = mySQL.getPlayerData(uuid).join();
+        assertEquals(42, onlineTime(data));
+        assertEquals(6, data.getAsJsonObject("meta").get("afkTimeInSeconds").getAsLong());
+    }
+
+    @Test
+    void upsertBatchKeepsServerNameAndStreamsBack() throws Exception {
+        List<StoredRow> rows = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            rows.add(new StoredRow(UUID.randomUUID().toString(), i % 2 == 0 ? "test" : "other",
+                    meta(i).toString(), "1.21"));
+        }
+        mySQL.upsertBatch(rows);
+        // 重复写入同一批数据只更新，不新增
+        mySQL.upsertBatch(rows);
+
+        List<StoredRow> streamed = new ArrayList<>();
+        assertEquals(50, mySQL.streamAllData(7, streamed::add));
+        assertEquals(25, streamed.stream().filter(row -> row.serverName().equals("other")).count());
+        assertEquals(7, onlineTime(mySQL.getPlayerData(rows.get(7).uuid(), "other").join()));
+    }
+
+    /**
+     * 导出不占用并发许可，读取期间其他调用照常取得许可；熔断后在当前批次结束时停止
+     */
+    @Test
+    void streamHoldsNoPermitAndStopsAfterBreakerOpens() throws Exception {
+        List<StoredRow> rows = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            rows.add(new StoredRow(UUID.randomUUID().toString(), "test", meta(i).toString(), "1.21"));
+        }
+        mySQL.upsertBatch(rows);
+
+        CircuitBreaker breaker = mySQL.getCircuitBreaker();
+        List<StoredRow> streamed = new ArrayList<>();
+        assertThrows(MySQL.RejectedException.class, () -> mySQL.streamAllData(7, row -> {
+            assertEquals(0, breaker.getInFlight());
+            streamed.add(row);
+            if (streamed.size() == 10) {
+                // 其他调用连续失败导致熔断
+                while (breaker.getState() == CircuitBreaker.State.CLOSED) {
+                    assertTrue(breaker.acquireBlocking());
+                    breaker.release(0, false);
+                }
+            }
+        }));
+        assertEquals(14, streamed.size());
+    }
+
+    @Test
+    void compareAndSetSkipsChangedRows() throws Exception {
+        String unchanged = UUID.randomUUID().toString();
+        String changed = UUID.randomUUID().toString();
+        mySQL.upsertBatch(List.of(
+                new StoredRow(unchanged, "test", meta(1).toString(), "1.21"),
+                new StoredRow(changed, "test", meta(1).toString(), "1.21")));
+        // 读取之后被其他保存改动
+        mySQL.saveData(changed, meta(2), "1.21").join();
+
+        int updated = mySQL.compareAndSetBatch(List.of(
+                new StoredRow(unchanged, "test", meta(100).toString(), "1.21"),
+                new StoredRow(changed, "test", meta(100).toString(), "1.21")),
+                List.of(meta(1).toString(), meta(1).toString()));
+
+        assertEquals(1, updated);
+        assertEquals(100, onlineTime(mySQL.getPlayerData(unchanged).join()));
+        assertEquals(2, onlineTime(mySQL.getPlayerData(changed).join()));
+    }
+
+    /**
+     * 依次执行会读写共享缓存的各种数据库操作
+     */
+    private void runCachedOperations() throws Exception {
+        String uuid = UUID.randomUUID().toString();
+        assertTrue(mySQL.saveData(uuid, meta(10), "1.21").join());
+        assertTrue(mySQL.addOnlineTime(uuid, 5, 0, "1.21").join());
+        assertEquals(15, onlineTime(mySQL.loadPlayerData(uuid).join()));
+
+        String other = UUID.randomUUID().toString();
+        mySQL.upsertBatch(List.of(new StoredRow(other, "test", meta(1).toString(), "1.21")));
+        assertEquals(1, mySQL.compareAndSetBatch(List.of(new StoredRow(other, "test", meta(2).toString(), "1.21")),
+                List.of(meta(1).toString())));
+    }
+
+    /**
+     * 共享缓存的读写在归还许可后进行，Redis 变慢不计入数据库的慢调用，也不收紧并发限制
+     */
+    @Test
+    void slowRedisDoesNotCountAgainstDatabase() throws Exception {
+        try (FakeRedis redis = new FakeRedis()) {
+            redis.setDelayMillis(700);
+            testPlugin.startRedis(redis.getPort());
+
+            runCachedOperations();
+
+            CircuitBreaker breaker = mySQL.getCircuitBreaker();
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+            assertEquals(10, breaker.getLimit());
+            assertEquals(0, breaker.getInFlight());
+        }
+    }
+
+    /**
+     * 共享缓存抛出异常时，已成功的数据库写入仍然返回成功
+     */
+    @Test
+    void cacheFailureDoesNotFailDatabaseWrite() throws Exception {
+        RedisCache broken = mock(RedisCache.class);
+        doThrow(new IllegalStateException("Redis 故障")).when(broken).write(anyCollection());
+        doThrow(new IllegalStateException("Redis 故障")).when(broken).invalidate(anyCollection());
+        doThrow(new IllegalStateException("Redis 故障")).when(broken).fill(anyString(), anyString(), any());
+        testPlugin.useRedis(broken);
+
+        runCachedOperations();
+        assertEquals(CircuitBreaker.State.CLOSED, mySQL.getCircuitBreaker().getState());
+    }
+}
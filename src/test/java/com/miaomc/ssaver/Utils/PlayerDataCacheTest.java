@@ -0,0 +1,68 @@
+package com.miaomc.ssaver.utils;
+
+import com.miaomc.ssaver.SSaver;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PlayerDataCacheTest {
+
+    private final YamlConfiguration config = new YamlConfiguration();
+    private MySQL mySQL;
+    private PlayerDataCache cache;
+
+    @BeforeEach
+    void setUp() {
+        SSaver plugin = mock(SSaver.class);
+        mySQL = mock(MySQL.class);
+        // 模拟查询不存在的玩家，结果为null
+        when(mySQL.getPlayerData(anyString())).thenReturn(CompletableFuture.completedFuture(null));
+        when(plugin.getConfig()).thenReturn(config);
+        when(plugin.getMySQL()).thenReturn(mySQL);
+        cache = new PlayerDataCache(plugin);
+    }
+
+    @Test
+    void repeatedLookupsShareOneRead() {
+        String uuid = UUID.randomUUID().toString();
+        cache.get(uuid);
+        cache.get(uuid);
+        verify(mySQL, times(1)).getPlayerData(uuid);
+    }
+
+    /**
+     * 大量不同玩家的查询（如 HTTP 接口收到随机 UUID）不会让缓存超过上限
+     */
+    @Test
+    void sizeStaysWithinLimit() {
+        config.set("settings.lookupCacheMaxEntries", 100);
+        for (int i = 0; i < 1000; i++) {
+            cache.get(UUID.randomUUID().toString());
+            assertTrue(cache.size() <= 100, "缓存条数超过上限: " + cache.size());
+        }
+    }
+
+    @Test
+    void expiredEntriesAreSwept() throws Exception {
+        config.set("settings.lookupCacheTtl", 1);
+        for (int i = 0; i < 10; i++) {
+            cache.get(UUID.randomUUID().toString());
+        }
+        assertEquals(10, cache.size());
+
+        Thread.sleep(1100);
+        cache.get(UUID.randomUUID().toString());
+        assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,152 @@
+package com.miaomc.ssaver.utils;
+
+import com.miaomc.ssaver.FakeRedis;
+import com.miaomc.ssaver.SSaver;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 使用进程内的简易 Redis 测试共享缓存的写穿、填充与跨实例失效通知
+ */
+class RedisCacheTest {
+
+    private FakeRedis redis;
+    // 每个实例对应的本地缓存
+    private final Map<RedisCache, PlayerDataCache> caches = new IdentityHashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        redis = new FakeRedis();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        caches.keySet().forEach(RedisCache::close);
+        redis.close();
+    }
+
+    /**
+     * 创建一个连接到测试 Redis 的实例，相当于一台子服
+     */
+    private RedisCache cache(String serverName, String serialization) {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("cache.redis.host", "127.0.0.1");
+        config.set("cache.redis.port", redis.getPort());
+        config.set("cache.redis.serialization", serialization);
+
+        SSaver plugin = mock(SSaver.class);
+        MySQL mySQL = mock(MySQL.class);
+        when(mySQL.getServerName()).thenReturn(serverName);
+        when(plugin.getConfig()).thenReturn(config);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("SSaver-Test"));
+        when(plugin.getMySQL()).thenReturn(mySQL);
+        PlayerDataCache playerDataCache = mock(PlayerDataCache.class);
+        when(plugin.getPlayerDataCache()).thenReturn(playerDataCache);
+
+        RedisCache cache = new RedisCache(plugin);
+        caches.put(cache, playerDataCache);
+        return cache;
+    }
+
+    private static StoredRow row(String uuid, String serverName, String data) {
+        return new StoredRow(uuid, serverName, data, "1.21");
+    }
+
+    private void awaitSubscribers(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (redis.getSubscriberCount("ssaver:invalidate") < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "订阅超时");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void writeIsVisibleToOtherInstances() {
+        String uuid = UUID.randomUUID().toString();
+        cache("test", "json").write(List.of(row(uuid, "test", "{\"a\":1}")));
+
+        RedisCache other = cache("test", "json");
+        assertEquals("{\"a\":1}", other.get(uuid, "test"));
+        assertNull(other.get(uuid, "other"));
+    }
+
+    @Test
+    void fillDoesNotOverwriteNewerData() {
+        String uuid = UUID.randomUUID().toString();
+        RedisCache cache = cache("test", "json");
+
+        cache.fill(uuid, "test", "{\"a\":1}");
+        assertEquals("{\"a\":1}", cache.get(uuid, "test"));
+
+        cache.write(List.of(row(uuid, "test", "{\"a\":3}")));
+        // 较旧的读取结果不覆盖保存时写入的数据
+        cache.fill(uuid, "test", "{\"a\":2}");
+        assertEquals("{\"a\":3}", cache.get(uuid, "test"));
+
+        cache.invalidate(List.of(row(uuid, "test", null)));
+        assertNull(cache.get(uuid, "test"));
+    }
+
+    @Test
+    void gzipValuesRoundTrip() {
+        String uuid = UUID.randomUUID().toString();
+        String data = "{\"blocks\":{\"MINE_STONE\":" + "1".repeat(200) + "}}";
+        cache("test", "gzip").write(List.of(row(uuid, "test", data)));
+
+        byte[] raw = redis.getRaw("ssaver:test:" + uuid);
+        assertEquals(0x1f, raw[0] & 0xff);
+        assertEquals(0x8b, raw[1] & 0xff);
+        // 改回 json 的实例仍能读取已压缩的缓存
+        assertEquals(data, cache("test", "json").get(uuid, "test"));
+    }
+
+    /**
+     * 失效通知只清除相同服务器名称的其他实例的本地缓存，忽略自己发出的通知
+     */
+    @Test
+    void invalidationReachesOtherInstancesWithSameServerName() throws Exception {
+        RedisCache writer = cache("test", "json");
+        RedisCache sameServer = cache("test", "json");
+        RedisCache otherServer = cache("other", "json");
+        writer.start();
+        sameServer.start();
+        otherServer.start();
+        awaitSubscribers(3);
+
+        String uuid = UUID.randomUUID().toString();
+        writer.write(List.of(row(uuid, "test", "{}")));
+
+        verify(caches.get(sameServer), timeout(2000)).invalidate(uuid);
+        verify(caches.get(otherServer), after(500).never()).invalidate(uuid);
+        verify(caches.get(writer), never()).invalidate(uuid);
+    }
+
+    @Test
+    void unavailableRedisFallsBackQuietly() throws Exception {
+        RedisCache cache = cache("test", "json");
+        redis.close();
+
+        String uuid = UUID.randomUUID().toString();
+        cache.write(List.of(row(uuid, "test", "{}")));
+        cache.fill(uuid, "test", "{}");
+        assertNull(cache.get(uuid, "test"));
+    }
+}
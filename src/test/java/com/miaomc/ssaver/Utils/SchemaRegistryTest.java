@@ -0,0 +1,123 @@
+package com.miaomc.ssaver.utils;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaRegistryTest {
+
+    private static JsonObject parse(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+
+    private static int schemaVersion(JsonObject data) {
+        return data.getAsJsonObject("meta").get("schemaVersion").getAsInt();
+    }
+
+    /**
+     * 连续多个版本的改名编译为直达最新版本的映射，较新的旧数据只执行之后版本的改名
+     */
+    @Test
+    void chainedRenamesComposeToLatest() {
+        List<List<Map<String, String>>> compiled = SchemaRegistry.compile(List.of(
+                new SchemaRegistry.Upgrade(1, "1.0", Map.of("A", "B"), Map.of("X", "Y")),
+                new SchemaRegistry.Upgrade(2, "2.0", Map.of("B", "C"), Map.of())));
+
+        assertEquals(2, compiled.size());
+        Map<String, String> blocksFromZero = compiled.get(0).get(0);
+        assertEquals("MINE_C", blocksFromZero.get("MINE_A"));
+        assertEquals("MINE_C", blocksFromZero.get("MINE_B"));
+        assertEquals("BREAK_C", compiled.get(0).get(1).get("BREAK_A"));
+        assertEquals("KILL_Y", compiled.get(0).get(2).get("KILL_X"));
+
+        Map<String, String> blocksFromOne = compiled.get(1).get(0);
+        assertEquals("MINE_C", blocksFromOne.get("MINE_B"));
+        assertFalse(blocksFromOne.containsKey("MINE_A"));
+        assertTrue(compiled.get(1).get(2).isEmpty());
+    }
+
+    /**
+     * 改名后又改回原名时，原名保持不变，中间的名称回到原名
+     */
+    @Test
+    void renameBackComposesToIdentity() {
+        List<List<Map<String, String>>> compiled = SchemaRegistry.compile(List.of(
+                new SchemaRegistry.Upgrade(1, "1.0", Map.of(), Map.of("X", "Y")),
+                new SchemaRegistry.Upgrade(2, "2.0", Map.of(), Map.of("Y", "X"))));
+
+        JsonObject data = parse("{\"entities\":{\"KILL_X\":3,\"KILLED_BY_Y\":4}}");
+        SchemaRegistry.rename(data, compiled.get(0));
+        assertEquals(parse("{\"entities\":{\"KILL_X\":3,\"KILLED_BY_X\":4}}"), data);
+    }
+
+    @Test
+    void renamedKeyKeepsHigherValue() {
+        List<List<Map<String, String>>> compiled = SchemaRegistry.compile(List.of(
+                new SchemaRegistry.Upgrade(1, "1.0", Map.of("A", "B"), Map.of())));
+
+        JsonObject data = parse("{\"blocks\":{\"MINE_A\":7,\"MINE_B\":5,\"USE_A\":1,\"USE_B\":9}}");
+        SchemaRegistry.rename(data, compiled.get(0));
+        assertEquals(parse("{\"blocks\":{\"MINE_B\":7,\"USE_B\":9}}"), data);
+    }
+
+    /**
+     * 没有记录结构版本时按 dataVersion 推断：1.20.5 之前写入的按旧名称改名，
+     * 1.21.5 之后写入的 SPLASH_POTION 是新的独立实体，不能改为 POTION
+     */
+    @Test
+    void missingSchemaVersionIsDerivedFromDataVersion() {
+        String json = "{\"blocks\":{\"MINE_GRASS\":2},\"entities\":{\"KILL_SPLASH_POTION\":3}}";
+
+        JsonObject legacy = parse(json);
+        assertEquals(0, SchemaRegistry.getVersion(legacy, "1.20.4"));
+        assertTrue(SchemaRegistry.upgrade(legacy, "1.20.4"));
+        assertEquals(3, legacy.getAsJsonObject("entities").get("KILL_POTION").getAsInt());
+        assertEquals(2, legacy.getAsJsonObject("blocks").get("MINE_SHORT_GRASS").getAsInt());
+        assertEquals(SchemaRegistry.CURRENT_VERSION, schemaVersion(legacy));
+
+        JsonObject recent = parse(json);
+        assertEquals(SchemaRegistry.CURRENT_VERSION, SchemaRegistry.getVersion(recent, "1.21.5"));
+        // 只记录结构版本，键名不变
+        assertTrue(SchemaRegistry.upgrade(recent, "1.21.5"));
+        assertEquals(3, recent.getAsJsonObject("entities").get("KILL_SPLASH_POTION").getAsInt());
+        assertFalse(recent.getAsJsonObject("entities").has("KILL_POTION"));
+        assertEquals(SchemaRegistry.CURRENT_VERSION, schemaVersion(recent));
+
+        JsonObject unknown = parse(json);
+        assertTrue(SchemaRegistry.upgrade(unknown, "unknown"));
+        assertTrue(unknown.getAsJsonObject("entities").has("KILL_POTION"));
+    }
+
+    /**
+     * 已记录结构版本的数据以记录为准，不再按 dataVersion 推断
+     */
+    @Test
+    void recordedSchemaVersionWins() {
+        String json = "{\"meta\":{\"schemaVersion\":" + SchemaRegistry.CURRENT_VERSION + "},"
+                + "\"entities\":{\"KILL_SPLASH_POTION\":3}}";
+        JsonObject data = parse(json);
+        assertFalse(SchemaRegistry.upgrade(data, "1.20.4"));
+        assertEquals(parse(json), data);
+
+        JsonObject old = parse("{\"meta\":{\"schemaVersion\":0},\"entities\":{\"KILL_SPLASH_POTION\":3}}");
+        assertTrue(SchemaRegistry.upgrade(old, "1.21.5"));
+        assertTrue(old.getAsJsonObject("entities").has("KILL_POTION"));
+    }
+
+    @Test
+    void minecraftVersionsCompareNumerically() {
+        assertTrue(SchemaRegistry.compareMinecraftVersions("1.20.5", "1.21") < 0);
+        assertTrue(SchemaRegistry.compareMinecraftVersions("1.20.10", "1.20.5") > 0);
+        assertEquals(0, SchemaRegistry.compareMinecraftVersions("1.21", "1.21.0"));
+        assertTrue(SchemaRegistry.compareMinecraftVersions("1.21-R0.1-SNAPSHOT", "1.20.5") > 0);
+        assertTrue(SchemaRegistry.compareMinecraftVersions("unknown", "1.20.5") < 0);
+        assertTrue(SchemaRegistry.compareMinecraftVersions(null, "1.20.5") < 0);
+    }
+}
@@ -0,0 +1,215 @@
+package com.miaomc.ssaver.utils;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.miaomc.ssaver.SSaver;
+import com.miaomc.ssaver.TestPlugin;
+import org.bukkit.Server;
+import org.bukkit.Statistic;
+import org.bukkit.plugin.PluginManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 通过真实的 HTTP 请求测试统计接口的鉴权、压缩、ETag 与离线玩家的读取
+ */
+class StatsHttpServerTest {
+
+    private static final String TOKEN = "secret-token";
+
+    @TempDir
+    Path dataFolder;
+
+    private ServerMock server;
+    private TestPlugin testPlugin;
+    private SSaver plugin;
+    private StatsHttpServer httpServer;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = MockBukkit.mock();
+        testPlugin = new TestPlugin(dataFolder.toFile())
+                .set("http.port", 0)
+                .set("http.token", TOKEN);
+        plugin = testPlugin.start();
+
+        // 测试环境不分发事件，注册监听器即可
+        Server bukkitServer = mock(Server.class);
+        when(bukkitServer.getPluginManager()).thenReturn(mock(PluginManager.class));
+        when(plugin.getServer()).thenReturn(bukkitServer);
+
+        httpServer = new StatsHttpServer(plugin);
+        httpServer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        httpServer.stop();
+        testPlugin.close();
+        MockBukkit.unmock();
+    }
+
+    private HttpResponse<byte[]> get(UUID uuid, String... headers) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(
+                URI.create("http://127.0.0.1:" + httpServer.getPort() + "/player/" + uuid));
+        if (headers.length > 0) {
+            request.headers(headers);
+        }
+        return client.send(request.GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private HttpResponse<byte[]> authorizedGet(UUID uuid, String... headers) throws IOException, InterruptedException {
+        String[] all = new String[headers.length + 2];
+        all[0] = "Authorization";
+        all[1] = "Bearer " + TOKEN;
+        System.arraycopy(headers, 0, all, 2, headers.length);
+        return get(uuid, all);
+    }
+
+    private static JsonObject json(byte[] body) {
+        return JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    private static byte[] gunzip(byte[] body) throws IOException {
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return input.readAllBytes();
+        }
+    }
+
+    private void store(UUID uuid, String data) {
+        assertTrue(plugin.getMySQL().saveData(uuid.toString(),
+                JsonParser.parseString(data).getAsJsonObject(), "1.21").join());
+    }
+
+    @Test
+    void rejectsMissingOrWrongToken() throws Exception {
+        UUID uuid = UUID.randomUUID();
+        store(uuid, "{\"blocks\":{\"MINE_STONE\":1}}");
+
+        assertEquals(401, get(uuid).statusCode());
+        assertEquals(401, get(uuid, "Authorization", "Bearer wrong-token").statusCode());
+        assertEquals(401, get(uuid, "Authorization", "Bearer " + TOKEN + "x").statusCode());
+        assertEquals(401, get(uuid, "Authorization", TOKEN).statusCode());
+        assertEquals(200, authorizedGet(uuid).statusCode());
+    }
+
+    /**
+     * 同一数据的 gzip 与未压缩响应内容一致，ETag 按编码区分，If-None-Match 只匹配相同编码
+     */
+    @Test
+    void gzipAndIdentityHaveDistinctEtags() throws Exception {
+        UUID uuid = UUID.randomUUID();
+        store(uuid, "{\"blocks\":{\"MINE_STONE\":1}}");
+
+        HttpResponse<byte[]> identity = authorizedGet(uuid);
+        assertEquals(200, identity.statusCode());
+        assertFalse(identity.headers().firstValue("Content-Encoding").isPresent());
+        assertEquals("Accept-Encoding", identity.headers().firstValue("Vary").orElse(null));
+
+        HttpResponse<byte[]> gzip = authorizedGet(uuid, "Accept-Encoding", "gzip, deflate");
+        assertEquals(200, gzip.statusCode());
+        assertEquals("gzip", gzip.headers().firstValue("Content-Encoding").orElse(null));
+        assertEquals("Accept-Encoding", gzip.headers().firstValue("Vary").orElse(null));
+        assertArrayEquals(identity.body(), gunzip(gzip.body()));
+
+        // 明确拒绝 gzip 时返回未压缩的数据
+        HttpResponse<byte[]> refused = authorizedGet(uuid, "Accept-Encoding", "gzip;q=0, identity");
+        assertFalse(refused.headers().firstValue("Content-Encoding").isPresent());
+
+        String identityEtag = identity.headers().firstValue("ETag").orElseThrow();
+        String gzipEtag = gzip.headers().firstValue("ETag").orElseThrow();
+        assertNotEquals(identityEtag, gzipEtag);
+
+        HttpResponse<byte[]> notModified = authorizedGet(uuid, "Accept-Encoding", "gzip", "If-None-Match", gzipEtag);
+        assertEquals(304, notModified.statusCode());
+        assertEquals(0, notModified.body().length);
+        assertEquals("Accept-Encoding", notModified.headers().firstValue("Vary").orElse(null));
+        assertEquals(304, authorizedGet(uuid, "If-None-Match", "\"other\", W/" + identityEtag).statusCode());
+
+        // 另一种编码的 ETag 不能让客户端沿用缓存
+        assertEquals(200, authorizedGet(uuid, "If-None-Match", gzipEtag).statusCode());
+        assertEquals(200, authorizedGet(uuid, "Accept-Encoding", "gzip", "If-None-Match", identityEtag).statusCode());
+    }
+
+    /**
+     * 在线玩家返回内存快照，不在线的玩家从数据库读取，没有数据时返回 404，数据库不可用时返回 503
+     */
+    @Test
+    void offlinePlayersFallBackToDatabase() throws Exception {
+        PlayerMock player = server.addPlayer();
+        player.setStatistic(Statistic.JUMP, 12);
+        UUID offline = UUID.randomUUID();
+        store(offline, "{\"blocks\":{\"MINE_STONE\":3}}");
+
+        server.getScheduler().performOneTick();
+        long deadline = System.currentTimeMillis() + 10_000;
+        HttpResponse<byte[]> online = authorizedGet(player.getUniqueId());
+        while (online.statusCode() != 200) {
+            assertTrue(System.currentTimeMillis() < deadline, "快照超时");
+            Thread.sleep(10);
+            online = authorizedGet(player.getUniqueId());
+        }
+        JsonObject snapshot = json(online.body());
+        assertTrue(snapshot.get("online").getAsBoolean());
+        assertEquals(player.getName(), snapshot.get("playerName").getAsString());
+
+        HttpResponse<byte[]> stored = authorizedGet(offline);
+        assertEquals(200, stored.statusCode());
+        JsonObject data = json(stored.body());
+        assertFalse(data.get("online").getAsBoolean());
+        assertEquals(3, data.getAsJsonObject("blocks").get("MINE_STONE").getAsInt());
+
+        assertEquals(404, authorizedGet(UUID.randomUUID()).statusCode());
+
+        MySQL failing = testPlugin.spyMySQL();
+        doReturn(CompletableFuture.failedFuture(new SQLException("数据库不可用")))
+                .when(failing).getPlayerData(anyString());
+        assertEquals(503, authorizedGet(UUID.randomUUID()).statusCode());
+        // 已缓存的离线数据与在线快照不受影响
+        assertEquals(200, authorizedGet(offline).statusCode());
+        assertEquals(200, authorizedGet(player.getUniqueId()).statusCode());
+    }
+
+    @Test
+    void headerParsing() {
+        assertTrue(StatsHttpServer.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(StatsHttpServer.acceptsGzip("*"));
+        assertFalse(StatsHttpServer.acceptsGzip("gzip;q=0"));
+        assertFalse(StatsHttpServer.acceptsGzip("x-gzip-like"));
+        assertFalse(StatsHttpServer.acceptsGzip(null));
+
+        assertTrue(StatsHttpServer.matchesEtag("*", "\"a\""));
+        assertTrue(StatsHttpServer.matchesEtag("\"b\", W/\"a\"", "\"a\""));
+        assertFalse(StatsHttpServer.matchesEtag("\"a-gzip\"", "\"a\""));
+        assertFalse(StatsHttpServer.matchesEtag(null, "\"a\""));
+    }
+}